@@ -0,0 +1,103 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.net.OutboundQueue;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A heartbeat reply end to end, as a transport delivers it: {@link ClientHandler} parses and
+ * routes {@code CMD[:_:]TEST}, encodes the reply, flushes it through the compression stream into
+ * the session's {@link OutboundQueue}, and the benchmark drains the queue as the transport would.
+ *
+ * <p>This path is not allocation-free. Each flush copies the encoded batch out of the reused
+ * encoder buffer into the queue, since the socket takes it later, and wraps it in a queue entry.
+ * For a TEST reply that is 64 bytes of text (48 binary); {@link #MAX_BYTES_PER_OP} holds it there.
+ * The NIO transport also copies each inbound message to hand it to the worker pool, which this
+ * benchmark does not cover. Run through {@link ProtocolAllocationBenchmark}'s main to check it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchAllocationBenchmark {
+
+    // The queued copy of a 20-byte text reply (40) and its queue entry (24), plus profiler noise
+    static final double MAX_BYTES_PER_OP = 65.0;
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    private final byte[] line = "CMD[:_:]TEST".getBytes(StandardCharsets.UTF_8);
+    private byte[] frame;
+    private OutboundQueue queue;
+    private ClientHandler handler;
+
+    @Setup
+    public void setup() throws Exception {
+        // Every request would otherwise go through the per-IP token bucket
+        Config.loadDefaults(Map.of("rate-limit-enabled", false));
+        queue = OutboundQueue.fromConfig(null, null);
+        handler = new ClientHandler("127.0.0.1", queue);
+        if (protocol.equals("binary")) {
+            byte[] negotiate = "CMD[:_:]PROTOCOL[:_:]BIN1".getBytes(StandardCharsets.UTF_8);
+            handler.handleLine(negotiate, negotiate.length);
+
+            ByteArrayOutputStream framed = new ByteArrayOutputStream();
+            ResponseEncoder client = new ResponseEncoder(framed);
+            client.setBinary(true);
+            client.begin("CMD", "TEST");
+            client.end();
+            client.flush();
+            byte[] bytes = framed.toByteArray();
+            int offset = 0;
+            while ((bytes[offset] & 0x80) != 0) offset++;
+            frame = Arrays.copyOfRange(bytes, offset + 1, bytes.length);
+        }
+        drain();
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.closeConnection();
+    }
+
+    @Benchmark
+    public int heartbeat() throws Exception {
+        if (frame != null) {
+            handler.handleFrame(frame);
+        } else {
+            handler.handleLine(line, line.length);
+        }
+        return drain();
+    }
+
+    private int drain() throws IOException {
+        int bytes = 0;
+        byte[] chunk;
+        while ((chunk = queue.poll()) != null) bytes += chunk.length;
+        if (bytes == 0) throw new IOException("No reply queued");
+        return bytes;
+    }
+}
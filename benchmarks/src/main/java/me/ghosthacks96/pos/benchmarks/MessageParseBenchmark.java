@@ -0,0 +1,121 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Inbound side of the text protocol: the original {@code ClientHandler.parseMessage} (decode the
+ * line, split on {@code DELIMITER_PATTERN}, upper-case and trim) against {@link MessageParser},
+ * which tokenizes the line bytes in place. Run with {@code -prof gc} to see bytes allocated per
+ * message.
+ *
+ * <p>Message sizes follow real traffic: a heartbeat reply, a login, a PROD_LIST page request and a
+ * 100-field line the size of a large TRA submission.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageParseBenchmark {
+
+    private static final String DELIMITER = "[:_:]";
+    // As declared in the original ClientHandler
+    private static final Pattern DELIMITER_PATTERN = Pattern.compile(Pattern.quote(DELIMITER));
+    private static final String[] ALLOWED_PREFIXES = {"CMD", "REC", "TRA", "DAT"};
+
+    @Param({"TEST", "LOGIN", "PROD_PAGE", "TRA_100"})
+    public String message;
+
+    private String line;
+    private byte[] bytes;
+    private MessageParser parser;
+
+    @Setup
+    public void setup() {
+        line = switch (message) {
+            case "TEST" -> "CMD[:_:]TEST";
+            case "LOGIN" -> "CMD[:_:]LOGIN[:_:]cashier07[:_:]correct-horse-battery";
+            case "PROD_PAGE" -> "DAT[:_:]PROD_LIST[:_:]1200[:_:]100";
+            case "TRA_100" -> traLine(100);
+            default -> throw new IllegalArgumentException(message);
+        };
+        bytes = line.getBytes(StandardCharsets.UTF_8);
+        parser = new MessageParser();
+    }
+
+    private static String traLine(int fields) {
+        StringBuilder sb = new StringBuilder("TRA[:_:]SUBMIT[:_:]TX-000123");
+        for (int i = 3; i < fields; i++) {
+            sb.append(DELIMITER).append(i % 3 == 0 ? "SKU-" + (10000 + i) : i % 3 == 1 ? String.valueOf(i % 7 + 1) : "12.99");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The original path end to end: the reader produced a String, parseMessage split and trimmed it
+     */
+    @Benchmark
+    public void legacyParseMessage(Blackhole bh) {
+        String message = new String(bytes, StandardCharsets.UTF_8);
+        String[] parts = DELIMITER_PATTERN.split(message.trim());
+        String command = parts[0].toUpperCase().trim();
+        boolean validPrefix = false;
+        for (String prefix : ALLOWED_PREFIXES) {
+            if (command.startsWith(prefix)) {
+                validPrefix = true;
+                break;
+            }
+        }
+        String[] args = new String[parts.length - 1];
+        for (int i = 1; i < parts.length; i++) {
+            args[i - 1] = parts[i] != null ? parts[i].trim() : "";
+        }
+        bh.consume(validPrefix);
+        bh.consume(args);
+    }
+
+    /**
+     * DELIMITER_PATTERN.split alone, on an already decoded line
+     */
+    @Benchmark
+    public String[] delimiterPatternSplit() {
+        return DELIMITER_PATTERN.split(line);
+    }
+
+    /**
+     * What routing needs: tokenize, prefix and the subcommand hash, no Strings created
+     */
+    @Benchmark
+    public void messageParserRoute(Blackhole bh) {
+        parser.loadLine(bytes, 0, bytes.length);
+        bh.consume(parser.prefix());
+        bh.consume(parser.argHashUpper(0));
+    }
+
+    /**
+     * Tokenize and materialize every argument as a String, as a handler reading all fields would
+     */
+    @Benchmark
+    public void messageParserAllArgs(Blackhole bh) {
+        parser.loadLine(bytes, 0, bytes.length);
+        bh.consume(parser.prefix());
+        for (int i = 0; i < parser.argCount(); i++) bh.consume(parser.arg(i));
+    }
+}
@@ -0,0 +1,122 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.controllers.DatabaseHandler;
+import me.ghosthacks96.pos.server.utils.controllers.commands.DatCommands;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling a DAT PROD_LIST response from rows already read, leaving the database out. The
+ * original {@code handleDat} built it from {@code getAllProducts()} maps with a StringBuilder and
+ * buildResponse; the current path feeds each row to {@link DatCommands#productRows} writing into a
+ * {@link ResponseEncoder}. The map list for the legacy case is built once in setup, so its
+ * numbers understate the original cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProductListBenchmark {
+
+    private static final String DELIMITER = "[:_:]";
+
+    @Param({"10", "100", "1000"})
+    public int products;
+
+    private int[] ids;
+    private String[] names;
+    private String[] descriptions;
+    private BigDecimal[] prices;
+    private int[] stocks;
+    private List<Map<String, Object>> rows;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private ResponseEncoder text;
+    private ResponseEncoder binary;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ids = new int[products];
+        names = new String[products];
+        descriptions = new String[products];
+        prices = new BigDecimal[products];
+        stocks = new int[products];
+        rows = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            ids[i] = i + 1;
+            names[i] = "Product " + (i + 1);
+            descriptions[i] = "Shelf item " + (i + 1) + ", 500ml, pack of " + (random.nextInt(12) + 1);
+            prices[i] = BigDecimal.valueOf(50 + random.nextInt(5000), 2);
+            stocks[i] = random.nextInt(500);
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", ids[i]);
+            row.put("name", names[i]);
+            row.put("description", descriptions[i]);
+            row.put("price", prices[i].doubleValue());
+            row.put("stock", stocks[i]);
+            rows.add(row);
+        }
+        text = new ResponseEncoder(sink);
+        binary = new ResponseEncoder(sink);
+        binary.setBinary(true);
+    }
+
+    @Benchmark
+    public void legacyStringBuilder() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (var product : rows) {
+            sb.append(product.get("id")).append("|")
+              .append(product.get("name")).append("|")
+              .append(product.get("description")).append("|")
+              .append(product.get("price")).append("|")
+              .append(product.get("stock")).append(";");
+        }
+        if (sb.length() > 0) sb.setLength(sb.length() - 1);
+        StringBuilder response = new StringBuilder("DAT" + DELIMITER + "PROD_LIST");
+        response.append(DELIMITER).append(sb);
+        sink.write((response + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void encoderText() throws IOException {
+        encode(text);
+    }
+
+    @Benchmark
+    public void encoderBinary() throws IOException {
+        encode(binary);
+    }
+
+    private void encode(ResponseEncoder out) throws IOException {
+        out.begin("DAT", "PROD_LIST");
+        DatabaseHandler.ProductVisitor visitor = DatCommands.productRows(out, 0);
+        for (int i = 0; i < products; i++) {
+            visitor.visit(ids[i], names[i], descriptions[i], prices[i], stocks[i]);
+        }
+        out.end();
+        out.flush();
+    }
+}
@@ -0,0 +1,168 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guard for the per-message hot path: routing a text line or a binary frame with
+ * {@link MessageParser}, and encoding and flushing a reply with {@link ResponseEncoder}, must not
+ * allocate once the buffers have grown to size. Every benchmark here touches only what the
+ * dispatcher does before a handler asks for String arguments.
+ *
+ * <pre>
+ * mvn package
+ * java -cp target/benchmarks.jar me.ghosthacks96.pos.benchmarks.ProtocolAllocationBenchmark
+ * </pre>
+ *
+ * The main method runs these and {@link DispatchAllocationBenchmark} with the GC profiler and
+ * exits with status 1 when any of them reports {@code gc.alloc.rate.norm} above its limit:
+ * {@link #MAX_BYTES_PER_OP} here, the queued copy of the reply for the full dispatch path. The
+ * repo has no test suite, so this is the check to run when the protocol path changes. Run through
+ * {@code org.openjdk.jmh.Main} with {@code -prof gc} for the figures alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolAllocationBenchmark {
+
+    // The profiler's per-op figure carries sampling noise; a real allocation is at least 16 bytes
+    static final double MAX_BYTES_PER_OP = 1.0;
+
+    @Param({"TEST", "LOGIN"})
+    public String message;
+
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private byte[] line;
+    private byte[] frame;
+    private int frameOffset;
+    private String[] parts;
+    private MessageParser parser;
+    private ResponseEncoder text;
+    private ResponseEncoder binary;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] request = switch (message) {
+            case "TEST" -> new String[]{"CMD", "TEST"};
+            case "LOGIN" -> new String[]{"CMD", "LOGIN", "cashier07", "correct-horse-battery"};
+            default -> throw new IllegalArgumentException(message);
+        };
+        parts = message.equals("TEST") ? new String[]{"OK"} : new String[]{"SUCCESS", "Login successful"};
+        line = String.join("[:_:]", request).getBytes(StandardCharsets.UTF_8);
+
+        // A terminal's frame is the same opcode encoding the server replies with
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        ResponseEncoder client = new ResponseEncoder(framed);
+        client.setBinary(true);
+        client.begin(request[0], request[1]);
+        for (int i = 2; i < request.length; i++) client.part(request[i]);
+        client.end();
+        client.flush();
+        frame = framed.toByteArray();
+        while ((frame[frameOffset] & 0x80) != 0) frameOffset++;
+        frameOffset++;
+
+        parser = new MessageParser();
+        text = new ResponseEncoder(sink);
+        binary = new ResponseEncoder(sink);
+        binary.setBinary(true);
+    }
+
+    @Benchmark
+    public void routeLine(Blackhole bh) {
+        parser.loadLine(line, 0, line.length);
+        route(bh);
+    }
+
+    @Benchmark
+    public void routeFrame(Blackhole bh) throws ProtocolException {
+        parser.loadFrame(frame, frameOffset, frame.length - frameOffset);
+        route(bh);
+    }
+
+    @Benchmark
+    public void replyText() throws IOException {
+        reply(text);
+    }
+
+    @Benchmark
+    public void replyBinary() throws IOException {
+        reply(binary);
+    }
+
+    private void route(Blackhole bh) {
+        bh.consume(parser.prefix());
+        bh.consume(parser.argHashUpper(0));
+        bh.consume(parser.argCount());
+        bh.consume(parser.correlationId());
+    }
+
+    private void reply(ResponseEncoder out) throws IOException {
+        out.begin("CMD", message);
+        for (String part : parts) out.part(part);
+        out.end();
+        out.flush();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ProtocolAllocationBenchmark.class.getName())
+                .include(DispatchAllocationBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        boolean failed = false;
+        System.out.println();
+        for (RunResult run : results) {
+            String benchmark = run.getParams().getBenchmark();
+            boolean dispatch = benchmark.startsWith(DispatchAllocationBenchmark.class.getName() + ".");
+            double limit = dispatch ? DispatchAllocationBenchmark.MAX_BYTES_PER_OP : MAX_BYTES_PER_OP;
+            String label = benchmark.substring(benchmark.lastIndexOf('.') + 1) + " "
+                    + run.getParams().getParam(dispatch ? "protocol" : "message");
+            Result<?> norm = run.getSecondaryResults().get("gc.alloc.rate.norm");
+            if (norm == null) {
+                System.out.printf("%-20s no allocation figure from the GC profiler%n", label);
+                failed = true;
+                continue;
+            }
+            boolean ok = norm.getScore() <= limit;
+            System.out.printf("%-20s %10.3f B/op  %s%n", label, norm.getScore(), ok ? "ok" : "OVER " + limit);
+            failed |= !ok;
+        }
+        if (failed) {
+            System.err.println("Allocation check failed");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,96 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound side: the original {@code ClientHandler.buildResponse} (concatenate, then encode the
+ * String for the socket) against {@link ResponseEncoder}, which writes the fields as bytes into a
+ * reused buffer. Both end with the bytes handed to an OutputStream that discards them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+
+    private static final String DELIMITER = "[:_:]";
+
+    @Param({"TEST_OK", "LOGIN_OK", "U_DATA"})
+    public String response;
+
+    private String type;
+    private String command;
+    private String[] parts;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private ResponseEncoder text;
+    private ResponseEncoder binary;
+
+    @Setup
+    public void setup() {
+        switch (response) {
+            case "TEST_OK" -> {
+                type = "CMD";
+                command = "TEST";
+                parts = new String[]{"OK"};
+            }
+            case "LOGIN_OK" -> {
+                type = "CMD";
+                command = "LOGIN";
+                parts = new String[]{"SUCCESS", "Login successful"};
+            }
+            case "U_DATA" -> {
+                type = "DAT";
+                command = "U_DATA";
+                parts = new String[]{"cashier07", "cashier07|false|true|2025-06-14 09:31:22"};
+            }
+            default -> throw new IllegalArgumentException(response);
+        }
+        text = new ResponseEncoder(sink);
+        binary = new ResponseEncoder(sink);
+        binary.setBinary(true);
+    }
+
+    @Benchmark
+    public void legacyBuildResponse() throws IOException {
+        StringBuilder response = new StringBuilder(type + DELIMITER + command);
+        for (String part : parts) {
+            response.append(DELIMITER).append(part != null ? part : "");
+        }
+        sink.write((response + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void encoderText() throws IOException {
+        encode(text);
+    }
+
+    @Benchmark
+    public void encoderBinary() throws IOException {
+        encode(binary);
+    }
+
+    private void encode(ResponseEncoder out) throws IOException {
+        out.begin(type, command);
+        for (String part : parts) out.part(part);
+        out.end();
+        out.flush();
+    }
+}
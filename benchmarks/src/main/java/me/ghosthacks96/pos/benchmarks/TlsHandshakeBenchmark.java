@@ -0,0 +1,195 @@
+package me.ghosthacks96.pos.benchmarks;
+
+import me.ghosthacks96.pos.server.utils.net.TerminalTls;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connect latency of a terminal: plaintext, TLS with a full handshake, and TLS resuming a cached
+ * session, for TLS 1.3 and 1.2. Each sample is connect until the first line (the server's
+ * LOGINREQUEST) has been read, so TLS samples include the whole handshake.
+ *
+ * <pre>
+ * java -cp ... me.ghosthacks96.pos.benchmarks.TlsHandshakeBenchmark [iterations] [keystore.p12 password]
+ * </pre>
+ *
+ * Without a keystore a self-signed one is generated with keytool into a temporary directory. The
+ * TLS listener is built by {@link TerminalTls}, exactly as the server builds it.
+ */
+public final class TlsHandshakeBenchmark {
+
+    private static final byte[] GREETING = "CMD[:_:]LOGINREQUEST\n".getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        String keystore;
+        char[] password;
+        if (args.length > 2) {
+            keystore = args[1];
+            password = args[2].toCharArray();
+        } else {
+            password = "changeit".toCharArray();
+            keystore = generateKeystore(password);
+        }
+
+        TerminalTls tls = TerminalTls.create(keystore, password, 1000, 86400, new String[]{"TLSv1.3", "TLSv1.2"});
+        try (ServerSocket plain = new ServerSocket(0); SSLServerSocket secure = tls.newServerSocket(0)) {
+            serve(plain, null);
+            serve(secure, tls);
+            TrustManagerFactory trust = trustFor(keystore, password);
+
+            System.out.printf("%d connections per case, %d warm-up%n%n", iterations, iterations / 5);
+            System.out.printf("%-22s %9s %9s %9s %9s%n", "case", "mean ms", "p50 ms", "p90 ms", "p99 ms");
+            report("plaintext", measure(iterations, () -> readGreeting(new Socket("127.0.0.1", plain.getLocalPort()))));
+            for (String protocol : new String[]{"TLSv1.3", "TLSv1.2"}) {
+                // A new client context per connection has no session to offer
+                report(protocol + " full", measure(iterations, () -> {
+                    SSLContext fresh = clientContext(trust);
+                    return timed(() -> readGreeting(tlsSocket(fresh, secure.getLocalPort(), protocol)));
+                }));
+                SSLContext shared = clientContext(trust);
+                readGreeting(tlsSocket(shared, secure.getLocalPort(), protocol));
+                report(protocol + " resumed", measure(iterations, () -> readGreeting(tlsSocket(shared, secure.getLocalPort(), protocol))));
+            }
+        }
+        System.out.println();
+        System.out.println("server: " + tls.toMap());
+        System.exit(0);
+    }
+
+    /** One timed connection, returning nanoseconds */
+    private interface Sample {
+        long run() throws Exception;
+    }
+
+    /** Work whose duration is the sample, for cases that need untimed setup first */
+    private interface Connect {
+        void run() throws Exception;
+    }
+
+    private static long timed(Connect connect) throws Exception {
+        long start = System.nanoTime();
+        connect.run();
+        return System.nanoTime() - start;
+    }
+
+    private static long[] measure(int iterations, Connect connect) throws Exception {
+        return measure(iterations, () -> timed(connect));
+    }
+
+    private static long[] measure(int iterations, Sample sample) throws Exception {
+        for (int i = 0; i < iterations / 5; i++) sample.run();
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) samples[i] = sample.run();
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private static void report(String name, long[] sorted) {
+        double mean = Arrays.stream(sorted).average().orElse(0) / 1e6;
+        System.out.printf("%-22s %9.3f %9.3f %9.3f %9.3f%n", name, mean,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    private static void readGreeting(Socket socket) throws IOException {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream in = socket.getInputStream();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) throw new IOException("Server closed before greeting");
+            }
+        }
+    }
+
+    private static SSLSocket tlsSocket(SSLContext context, int port, String protocol) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("127.0.0.1", port);
+        socket.setEnabledProtocols(new String[]{protocol});
+        return socket;
+    }
+
+    private static SSLContext clientContext(TrustManagerFactory trust) throws Exception {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trust.getTrustManagers(), null);
+        return context;
+    }
+
+    private static TrustManagerFactory trustFor(String keystore, char[] password) throws Exception {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keystore)) {
+            store.load(in, password);
+        }
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(store);
+        return trust;
+    }
+
+    /**
+     * Accept loop standing in for the terminal listener: greet, then wait for the client to hang up
+     */
+    private static void serve(ServerSocket listener, TerminalTls tls) {
+        Thread acceptor = new Thread(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    Socket socket = listener.accept();
+                    if (tls != null) tls.track(socket);
+                    Thread handler = new Thread(() -> {
+                        try (socket) {
+                            socket.setTcpNoDelay(true);
+                            OutputStream out = socket.getOutputStream();
+                            out.write(GREETING);
+                            out.flush();
+                            while (socket.getInputStream().read() >= 0) {
+                                // discard until the client closes
+                            }
+                        } catch (IOException ignored) {
+                            // client hung up mid-handshake or without close_notify
+                        }
+                    });
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "Bench-Accept-" + (tls != null ? "tls" : "plain"));
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private static String generateKeystore(char[] password) throws Exception {
+        File dir = Files.createTempDirectory("pos-tls-bench").toFile();
+        File keystore = new File(dir, "terminal.p12");
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "pos", "-keyalg", "EC",
+                "-groupname", "secp256r1", "-validity", "30", "-dname", "CN=127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", keystore.getPath(),
+                "-storepass", new String(password), "-keypass", new String(password))
+                .inheritIO().start();
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            throw new IllegalStateException("keytool failed to generate " + keystore);
+        }
+        keystore.deleteOnExit();
+        dir.deleteOnExit();
+        return keystore.getPath();
+    }
+}
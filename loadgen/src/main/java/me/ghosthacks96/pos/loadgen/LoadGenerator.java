@@ -0,0 +1,298 @@
+package me.ghosthacks96.pos.loadgen;
+
+import me.ghosthacks96.pos.server.POSServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capacity test for one POSServer: N simulated terminals send a weighted mix of CMD TEST, LOGIN,
+ * DAT PROD_LIST, DAT U_DATA and DAT TRANSACTION at a fixed total rate, and the run reports
+ * throughput and latency percentiles per operation.
+ *
+ * <pre>
+ * --terminals=100         simulated terminals, one connection each
+ * --rate=1000             requests per second across all terminals
+ * --duration=30           measured seconds, after --warmup=5 unmeasured seconds
+ * --mix=TEST:30,LOGIN:5,PROD_LIST:30,U_DATA:20,TRANSACTION:15
+ * --host=, --port=666     target server; without --host an embedded server is started on a
+ *                         temporary SQLite file seeded with --products=1000 and --transactions=1000
+ * --set=key=value         option for the embedded server, repeatable (e.g. --set=transport=nio)
+ * --username=admin --password=admin123 --page-size=50 --seed=1 --drain=10
+ * --max-p99-ms=           exit with status 1 if the overall p99 is above this, for CI
+ * </pre>
+ *
+ * The embedded server runs with rate limiting off unless --set says otherwise; against a remote
+ * server, raise its rate-* budgets or the generator will mostly measure throttling.
+ */
+public final class LoadGenerator {
+
+    static final class Options {
+        int terminals = 100;
+        int rate = 1000;
+        int duration = 30;
+        int warmup = 5;
+        int drain = 10;
+        Mix mix = Mix.parse("TEST:30,LOGIN:5,PROD_LIST:30,U_DATA:20,TRANSACTION:15");
+        String host = null;
+        int port = 666;
+        int products = 1000;
+        int transactions = 1000;
+        int pageSize = 50;
+        String username = "admin";
+        String password = "admin123";
+        long seed = 1;
+        double maxP99Ms = 0;
+        final Map<String, Object> serverOptions = new HashMap<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            options.serverOptions.put("rate-limit-enabled", false);
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) throw new IllegalArgumentException("Expected --name=value: " + arg);
+                String name = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (name) {
+                    case "terminals" -> options.terminals = Integer.parseInt(value);
+                    case "rate" -> options.rate = Integer.parseInt(value);
+                    case "duration" -> options.duration = Integer.parseInt(value);
+                    case "warmup" -> options.warmup = Integer.parseInt(value);
+                    case "drain" -> options.drain = Integer.parseInt(value);
+                    case "mix" -> options.mix = Mix.parse(value);
+                    case "host" -> options.host = value;
+                    case "port" -> options.port = Integer.parseInt(value);
+                    case "products" -> options.products = Integer.parseInt(value);
+                    case "transactions" -> options.transactions = Integer.parseInt(value);
+                    case "page-size" -> options.pageSize = Integer.parseInt(value);
+                    case "username" -> options.username = value;
+                    case "password" -> options.password = value;
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    case "max-p99-ms" -> options.maxP99Ms = Double.parseDouble(value);
+                    case "set" -> {
+                        int split = value.indexOf('=');
+                        if (split < 0) throw new IllegalArgumentException("Expected --set=key=value: " + arg);
+                        options.serverOptions.put(value.substring(0, split), parseValue(value.substring(split + 1)));
+                    }
+                    default -> throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.terminals < 1 || options.rate < 1) throw new IllegalArgumentException("terminals and rate must be positive");
+            return options;
+        }
+
+        // Config reads typed values, as YAML would produce them
+        private static Object parseValue(String value) {
+            if (value.equals("true") || value.equals("false")) return Boolean.parseBoolean(value);
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Weighted choice of operation
+     */
+    static final class Mix {
+        private final Operation[] ops;
+        private final int[] cumulative;
+
+        private Mix(Operation[] ops, int[] cumulative) {
+            this.ops = ops;
+            this.cumulative = cumulative;
+        }
+
+        static Mix parse(String spec) {
+            List<Operation> ops = new ArrayList<>();
+            List<Integer> cumulative = new ArrayList<>();
+            int total = 0;
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split(":");
+                int weight = kv.length > 1 ? Integer.parseInt(kv[1]) : 1;
+                if (weight <= 0) continue;
+                total += weight;
+                ops.add(Operation.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)));
+                cumulative.add(total);
+            }
+            if (ops.isEmpty()) throw new IllegalArgumentException("Empty mix: " + spec);
+            return new Mix(ops.toArray(new Operation[0]), cumulative.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        Operation pick(Random random) {
+            int r = random.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (r < cumulative[i]) return ops[i];
+            }
+            return ops[ops.length - 1];
+        }
+    }
+
+    static String transactionId(int n) {
+        return String.format("LOAD-%06d", n);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        boolean embedded = options.host == null;
+        if (embedded) startEmbedded(options);
+
+        System.out.printf("%d terminals, %d req/s, %ds warm-up + %ds measured, target %s:%d%s%n",
+                options.terminals, options.rate, options.warmup, options.duration, options.host, options.port,
+                embedded ? " (embedded " + options.serverOptions + ")" : "");
+
+        List<SimulatedTerminal> terminals = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < options.terminals; i++) {
+            SimulatedTerminal terminal = new SimulatedTerminal(i, options);
+            BufferedReader in = terminal.connect();
+            terminals.add(terminal);
+            readers.add(Thread.ofVirtual().name("reader-" + i).start(() -> terminal.read(in)));
+        }
+
+        // Each terminal sends every terminals/rate seconds, phase-shifted so the load is even
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * options.terminals / options.rate;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.duration);
+        Random phases = new Random(options.seed);
+        List<Thread> senders = new ArrayList<>();
+        for (SimulatedTerminal terminal : terminals) {
+            long first = start + (long) (phases.nextDouble() * intervalNanos);
+            senders.add(Thread.ofVirtual().start(() -> terminal.send(first, intervalNanos, measureFrom, end)));
+        }
+        for (Thread sender : senders) sender.join();
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drain);
+        while (System.nanoTime() < drainDeadline && terminals.stream().anyMatch(t -> t.outstanding() > 0)) {
+            Thread.sleep(10);
+        }
+        int lost = terminals.stream().mapToInt(SimulatedTerminal::lost).sum();
+        terminals.forEach(SimulatedTerminal::close);
+        for (Thread reader : readers) reader.join(TimeUnit.SECONDS.toMillis(5));
+
+        double p99 = report(options, terminals, lost);
+        if (embedded) POSServer.shutdownServer();
+        System.exit(options.maxP99Ms > 0 && p99 > options.maxP99Ms ? 1 : 0);
+    }
+
+    private static void startEmbedded(Options options) throws Exception {
+        // Keep the server's logging out of the report and away from a logs/ directory, unless asked for
+        if (System.getProperty("org.slf4j.simpleLogger.logFile") == null) System.setProperty("org.slf4j.simpleLogger.logFile", "System.err");
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        File db = File.createTempFile("pos-loadgen", ".db");
+        db.deleteOnExit();
+        try (ServerSocket probe = new ServerSocket(0)) {
+            options.port = probe.getLocalPort();
+        }
+        options.host = "127.0.0.1";
+        POSServer.startEmbedded(options.port, db.getPath(), options.serverOptions);
+        seed(db, options);
+    }
+
+    /**
+     * Bulk-load products and transactions for PROD_LIST and TRANSACTION to find
+     */
+    private static void seed(File db, Options options) throws Exception {
+        Random random = new Random(options.seed);
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db.getPath())) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO products (name, description, price, stock) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < options.products; i++) {
+                    ps.setString(1, "Product " + i);
+                    ps.setString(2, "Load test product number " + i + " with a typical description length");
+                    ps.setBigDecimal(3, BigDecimal.valueOf(50 + random.nextInt(5000), 2));
+                    ps.setInt(4, random.nextInt(500));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO transactions (transaction_id, employee_id, "
+                    + "subtotal, tax_amount, total_amount, payment_method, status) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < options.transactions; i++) {
+                    double subtotal = (100 + random.nextInt(20000)) / 100.0;
+                    ps.setString(1, transactionId(i));
+                    ps.setString(2, options.username);
+                    ps.setDouble(3, subtotal);
+                    ps.setDouble(4, Math.round(subtotal * 8) / 100.0);
+                    ps.setDouble(5, Math.round(subtotal * 108) / 100.0);
+                    ps.setString(6, random.nextBoolean() ? "CARD" : "CASH");
+                    ps.setString(7, "COMPLETED");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    /**
+     * Print the results table; returns the overall p99 in milliseconds
+     */
+    private static double report(Options options, List<SimulatedTerminal> terminals, int lost) {
+        Map<Operation, long[]> byOp = new EnumMap<>(Operation.class);
+        int[] failures = new int[Operation.values().length];
+        int[] throttled = new int[Operation.values().length];
+        int unsolicited = 0;
+        long sent = 0;
+        for (Operation op : Operation.values()) {
+            int total = terminals.stream().mapToInt(t -> t.counts[op.ordinal()]).sum();
+            long[] merged = new long[total];
+            int at = 0;
+            for (SimulatedTerminal terminal : terminals) {
+                int n = terminal.counts[op.ordinal()];
+                System.arraycopy(terminal.latencies[op.ordinal()], 0, merged, at, n);
+                at += n;
+                failures[op.ordinal()] += terminal.failures[op.ordinal()];
+                throttled[op.ordinal()] += terminal.throttled[op.ordinal()];
+            }
+            Arrays.sort(merged);
+            if (merged.length > 0) byOp.put(op, merged);
+        }
+        for (SimulatedTerminal terminal : terminals) {
+            unsolicited += terminal.unsolicited;
+            sent += terminal.sent;
+        }
+
+        System.out.println();
+        System.out.printf("%-12s %9s %8s %6s %9s %8s %8s %8s %8s %8s%n",
+                "operation", "completed", "req/s", "fail", "throttled", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long[] all = byOp.values().stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        byOp.forEach((op, samples) -> row(op.name(), samples, failures[op.ordinal()], throttled[op.ordinal()], options.duration));
+        row("ALL", all, Arrays.stream(failures).sum(), Arrays.stream(throttled).sum(), options.duration);
+
+        System.out.println();
+        System.out.printf("target %d req/s, sent %d (incl. warm-up), lost %d, unsolicited %d%n",
+                options.rate, sent, lost, unsolicited);
+        terminals.stream().filter(t -> t.error != null).limit(5)
+                .forEach(t -> System.out.println(t + " error: " + t.error));
+        return all.length > 0 ? percentile(all, 0.99) : 0;
+    }
+
+    private static void row(String name, long[] sorted, int failures, int throttled, int seconds) {
+        System.out.printf("%-12s %9d %8.1f %6d %9d %8.2f %8.2f %8.2f %8.2f %8.2f%n", name, sorted.length,
+                sorted.length / (double) seconds, failures, throttled, percentile(sorted, 0.50), percentile(sorted, 0.90),
+                percentile(sorted, 0.99), percentile(sorted, 0.999), sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,45 @@
+package me.ghosthacks96.pos.loadgen;
+
+import java.util.Random;
+
+/**
+ * A request a simulated terminal can send, and how to recognise its reply
+ */
+enum Operation {
+    TEST("CMD", "TEST"),
+    LOGIN("CMD", "LOGIN"),
+    PROD_LIST("DAT", "PROD_LIST"),
+    U_DATA("DAT", "U_DATA"),
+    TRANSACTION("DAT", "TRANSACTION");
+
+    static final String DELIMITER = "[:_:]";
+
+    private final String prefix;
+    private final String command;
+
+    Operation(String prefix, String command) {
+        this.prefix = prefix;
+        this.command = command;
+    }
+
+    /**
+     * One request line, with arguments drawn from the seeded data
+     */
+    String request(LoadGenerator.Options options, Random random) {
+        String head = prefix + DELIMITER + command;
+        return switch (this) {
+            case TEST -> head;
+            case LOGIN -> head + DELIMITER + options.username + DELIMITER + options.password;
+            case PROD_LIST -> head + DELIMITER + random.nextInt(Math.max(1, options.products)) + DELIMITER + options.pageSize;
+            case U_DATA -> head + DELIMITER + options.username;
+            case TRANSACTION -> head + DELIMITER + LoadGenerator.transactionId(random.nextInt(Math.max(1, options.transactions)));
+        };
+    }
+
+    /**
+     * Replies start with the request's prefix and subcommand
+     */
+    boolean answeredBy(String line) {
+        return line.startsWith(prefix) && line.startsWith(command, prefix.length() + DELIMITER.length());
+    }
+}
@@ -0,0 +1,181 @@
+package me.ghosthacks96.pos.loadgen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One terminal: a socket, a sender that fires requests on a fixed schedule and a reader that
+ * matches replies to them. The schedule is open loop: a request goes out at its planned time
+ * whether or not earlier ones were answered, and its latency is measured from that planned time,
+ * so a stalled server shows up as latency instead of as fewer requests (coordinated omission).
+ *
+ * <p>Replies to untagged requests come back in order, so pending requests are a FIFO queue.
+ */
+final class SimulatedTerminal {
+
+    private static final String HEARTBEAT = "CMD" + Operation.DELIMITER + "TEST";
+    private static final String[] UNSOLICITED = {
+            "CMD" + Operation.DELIMITER + "TOKEN", "CMD" + Operation.DELIMITER + "ALREADY_CONNECTED",
+            "CMD" + Operation.DELIMITER + "SHUTDOWN", "DAT" + Operation.DELIMITER + "PROD_PUSH"
+    };
+
+    /** A request waiting for its reply; op is null for heartbeat answers, which are not measured */
+    private record Pending(Operation op, long plannedNanos, boolean measured) {
+    }
+
+    private final int index;
+    private final LoadGenerator.Options options;
+    private final Random random;
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final Object sendLock = new Object();
+    private Socket socket;
+    private OutputStream out;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    // Written by the reader thread only, read after it has finished
+    final long[][] latencies = new long[Operation.values().length][];
+    final int[] counts = new int[Operation.values().length];
+    final int[] failures = new int[Operation.values().length];
+    final int[] throttled = new int[Operation.values().length];
+    int unsolicited = 0;
+    volatile int sent = 0;
+    volatile String error;
+
+    SimulatedTerminal(int index, LoadGenerator.Options options) {
+        this.index = index;
+        this.options = options;
+        this.random = new Random(options.seed * 31 + index);
+        for (int i = 0; i < latencies.length; i++) latencies[i] = new long[64];
+    }
+
+    /**
+     * Connect and wait for LOGINREQUEST
+     */
+    BufferedReader connect() throws IOException {
+        socket = new Socket(options.host, options.port);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        String greeting = in.readLine();
+        if (greeting == null || !greeting.endsWith("LOGINREQUEST")) {
+            throw new IOException("Unexpected greeting: " + greeting);
+        }
+        return in;
+    }
+
+    /**
+     * Send requests every {@code intervalNanos} from {@code firstNanos} until {@code endNanos};
+     * requests planned before {@code measureFromNanos} are warm-up and not recorded
+     */
+    void send(long firstNanos, long intervalNanos, long measureFromNanos, long endNanos) {
+        try {
+            for (long planned = firstNanos; planned < endNanos; planned += intervalNanos) {
+                long wait = planned - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                Operation op = options.mix.pick(random);
+                write(new Pending(op, planned, planned >= measureFromNanos), op.request(options, random));
+                sent++;
+            }
+        } catch (Exception e) {
+            if (error == null) error = "send: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Match replies to pending requests until the socket closes
+     */
+    void read(BufferedReader in) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                long now = System.nanoTime();
+                if (line.equals(HEARTBEAT)) {
+                    write(new Pending(null, now, false), HEARTBEAT);
+                    continue;
+                }
+                if (isUnsolicited(line)) {
+                    unsolicited++;
+                    continue;
+                }
+                Pending request = pending.poll();
+                if (request == null) {
+                    unsolicited++;
+                    continue;
+                }
+                outstanding.decrementAndGet();
+                if (request.op() == null || !request.measured()) continue;
+                if (!request.op().answeredBy(line)) {
+                    if (error == null) error = "reply out of order for " + request.op() + ": " + line;
+                }
+                record(request.op(), now - request.plannedNanos(), line);
+            }
+        } catch (IOException e) {
+            if (outstanding.get() > 0 && error == null) error = "read: " + e.getMessage();
+        }
+    }
+
+    private void write(Pending request, String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (sendLock) {
+            pending.add(request);
+            outstanding.incrementAndGet();
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    private void record(Operation op, long nanos, String line) {
+        int i = op.ordinal();
+        if (counts[i] == latencies[i].length) latencies[i] = Arrays.copyOf(latencies[i], counts[i] * 2);
+        latencies[i][counts[i]++] = nanos;
+        if (line.contains(Operation.DELIMITER + "RETRY_AFTER" + Operation.DELIMITER)) {
+            throttled[i]++;
+        } else if (line.contains(Operation.DELIMITER + "FAIL")) {
+            failures[i]++;
+        }
+    }
+
+    private static boolean isUnsolicited(String line) {
+        for (String prefix : UNSOLICITED) {
+            if (line.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Requests still waiting for a reply count as lost
+     */
+    int lost() {
+        int lost = 0;
+        for (Pending request : pending) {
+            if (request.op() != null && request.measured()) lost++;
+        }
+        return lost;
+    }
+
+    void close() {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "terminal-" + index;
+    }
+}
@@ -6,7 +6,18 @@ import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
 import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
 import me.ghosthacks96.pos.server.utils.controllers.DatabaseHandler;
 import me.ghosthacks96.pos.server.utils.controllers.LogfileHandler;
+import me.ghosthacks96.pos.server.utils.controllers.TransactionWriter;
 import me.ghosthacks96.pos.server.utils.controllers.WebInterfaceHandler;
+import me.ghosthacks96.pos.server.utils.net.Broadcaster;
+import me.ghosthacks96.pos.server.utils.net.NioServer;
+import me.ghosthacks96.pos.server.utils.net.PinningMonitor;
+import me.ghosthacks96.pos.server.utils.net.SessionRegistry;
+import me.ghosthacks96.pos.server.utils.net.SessionTokens;
+import me.ghosthacks96.pos.server.utils.net.RateLimiter;
+import me.ghosthacks96.pos.server.utils.net.ShutdownCoordinator;
+import me.ghosthacks96.pos.server.utils.net.TerminalTls;
+import me.ghosthacks96.pos.server.utils.net.TerminalThreads;
+import me.ghosthacks96.pos.server.utils.receipts.ReceiptRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,7 +29,7 @@ import java.io.FileWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,9 +45,24 @@ public class POSServer {
 
     public static boolean running = false;
     static int port = 666;
-    static ArrayList<ClientHandler> clientSockets = new ArrayList<>();
+    public static final SessionRegistry sessions = new SessionRegistry();
+    public static final Broadcaster broadcaster = new Broadcaster();
+    public static final SessionTokens sessionTokens = new SessionTokens();
+    public static final ShutdownCoordinator shutdown = new ShutdownCoordinator();
+    public static final RateLimiter rateLimiter = new RateLimiter();
+    public static final TransactionWriter transactionWriter = new TransactionWriter();
+    public static final ReceiptRenderer receipts = new ReceiptRenderer();
     private static LogfileHandler logfileHandler = new LogfileHandler();
     static WebInterfaceHandler webInterface;
+    static NioServer nioServer;
+    private static volatile ServerSocket acceptSocket;
+    // Set while the terminal listener runs with TLS, for handshake statistics
+    private static volatile TerminalTls tls;
+
+    static {
+        // Sales acknowledged to terminals are already committed; this stores any still queued
+        shutdown.addFlushHook("transactions", transactionWriter::flush);
+    }
 
     public static void main(String[] args) throws Exception{
 
@@ -140,20 +166,10 @@ public class POSServer {
 
     public static void shutdownSystem() {
        try{
+           console.printInfo("Shutting down POS Server...");
+           // Also closes the database connections
+           shutdown.drain();
            running = false;
-           console.printInfo("Shutting down POS Server... sending kill signal to all clients.");
-
-           if(clientSockets.size() > 0) {
-               for (ClientHandler client : clientSockets) {
-                   if (client.isConnected()) {
-                       client.sendToClient("CMD[:_:]SHUTDOWN");
-                       client.clientThread.interrupt();
-                       console.printInfo("Sent shutdown signal to client: " + client.getIp());
-                   }
-               }
-           } else {
-               console.printInfo("No clients connected.");
-           }
 
            config.saveConfig();
            console.printInfo("Unregistering local url...");
@@ -163,51 +179,161 @@ public class POSServer {
        }catch (Exception e) {
            console.printError("Error during shutdown: " + e.getMessage());
        }
+        logfileHandler.onShutdown();
         System.exit(0);
     }
 
     public static void startServerThread() {
+        shutdown.reset();
         running = true;
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(port)) {
-                console.printInfo("POS Server started on port " + port + ". Waiting for clients...");
+        boolean useTls = TerminalTls.isEnabled();
+        if ("nio".equalsIgnoreCase(Config.getString("transport", "blocking"))) {
+            if (!useTls) {
+                startNioServer();
+                return;
+            }
+            // The selector loops speak plaintext only; TLS needs the blocking listener
+            console.printWarning("TLS is not supported by the nio transport, using the blocking transport.");
+        }
+        tls = null;
+        if (useTls) {
+            try {
+                tls = TerminalTls.fromConfig();
+            } catch (Exception e) {
+                // Never fall back to plaintext when TLS was asked for
+                console.printError("Could not set up TLS, terminal server not started: " + e.getMessage());
+                logger.error("TLS setup failed: {}", e.getMessage(), e);
+                running = false;
+                return;
+            }
+        }
+        if (TerminalThreads.isVirtual()) {
+            PinningMonitor.start(Duration.ofMillis(Config.getInt("pinning-threshold-ms", 20)));
+        }
+        TerminalTls listenerTls = tls;
+        TerminalThreads.start("POS-Accept", () -> {
+            try (ServerSocket serverSocket = listenerTls != null ? listenerTls.newServerSocket(port) : new ServerSocket(port)) {
+                acceptSocket = serverSocket;
+                console.printInfo("POS Server started on port " + port + (listenerTls != null ? " (TLS)" : "") + ". Waiting for clients...");
 
                 while (running) {
                     Socket clientSocket = serverSocket.accept();
+                    if (listenerTls != null) listenerTls.track(clientSocket);
                     ClientHandler clientHandler = new ClientHandler(clientSocket);
-                    if(clientSockets.contains(clientHandler)) {
-                        console.printInfo("Client already connected: " + clientHandler.getIp());
-                        clientHandler.sendToClient("CMD[:_:]ALREADY_CONNECTED");
-                    }else{
-                        clientSockets.add(clientHandler);
-                    }
-                    console.printInfo("New client connected: " + clientHandler.getIp());
+                    registerClient(clientHandler);
 
                 }
             } catch (Exception e) {
-                console.printError("Error starting server: " + e.getMessage());
+                // Closing the listener is how a drain stops the accept loop
+                if (!shutdown.isDraining()) console.printError("Error starting server: " + e.getMessage());
+            }
+        });
+    }
 
+    /**
+     * Run the terminal server in this process on {@code port} against the SQLite file
+     * {@code dbFile}, without the console, web interface or mDNS, for load tests and benchmarks.
+     * Options are the bundled config.yml defaults; stop it with {@link #shutdownServer()}.
+     */
+    public static void startEmbedded(int port, String dbFile) {
+        startEmbedded(port, dbFile, Map.of());
+    }
+
+    /**
+     * {@link #startEmbedded(int, String)} with some options overridden, for example
+     * {@code rate-limit-enabled: false}. Returns once the listener accepts connections.
+     */
+    public static void startEmbedded(int port, String dbFile, Map<String, Object> overrides) {
+        if (logger == null) logger = LoggerFactory.getLogger(POSServer.class);
+        Config.loadDefaults(overrides);
+        POSServer.port = port;
+        databaseHandler = new DatabaseHandler(dbFile);
+        startServerThread();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (acceptSocket == null && nioServer == null) {
+            if (!running || System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Embedded server did not start on port " + port);
             }
-        }).start();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while starting the embedded server", e);
+            }
+        }
     }
 
+    private static void startNioServer() {
+        nioServer = new NioServer(port,
+                Config.getInt("nio-io-threads", 2),
+                Config.getInt("nio-worker-threads", 8),
+                POSServer::registerClient);
+        try {
+            nioServer.start();
+        } catch (Exception e) {
+            console.printError("Error starting server: " + e.getMessage());
+            nioServer = null;
+        }
+    }
+
+    /**
+     * Track a freshly accepted terminal. Another live session from the same IP gets the terminal
+     * an ALREADY_CONNECTED notice, but both stay registered so each is cleaned up on close.
+     */
+    private static void registerClient(ClientHandler clientHandler) {
+        if (!sessions.byIp(clientHandler.getIp()).isEmpty()) {
+            console.printInfo("Client already connected: " + clientHandler.getIp());
+            clientHandler.sendToClient("CMD[:_:]ALREADY_CONNECTED");
+        }
+        sessions.register(clientHandler);
+        console.printInfo("New client connected: " + clientHandler.getIp());
+    }
+
+    /**
+     * Drain and stop the terminal server; the web interface and console keep running
+     */
     public static void shutdownServer() {
-        running = false;
         console.printInfo("Shutting down server...");
+        if (!shutdown.drain()) {
+            console.printWarning("A drain is already in progress (" + shutdown.getPhase() + ").");
+            return;
+        }
+        console.printInfo("Server shutdown complete.");
+    }
 
-        if (clientSockets != null && !clientSockets.isEmpty()) {
-            for (ClientHandler client : clientSockets) {
-                if (client.isConnected()) {
-                    client.sendToClient("CMD[:_:]SHUTDOWN");
-                    client.clientThread.interrupt();
-                    console.printInfo("Sent shutdown signal to client: " + client.getIp());
-                }
+    /**
+     * Stop taking new terminal connections; existing sessions carry on
+     */
+    public static void stopAccepting() {
+        ServerSocket listener = acceptSocket;
+        acceptSocket = null;
+        if (listener != null) {
+            try {
+                listener.close();
+            } catch (Exception e) {
+                logger.warn("Error closing listener: {}", e.getMessage());
             }
-        } else {
-            console.printInfo("No clients connected.");
         }
+        if (nioServer != null) nioServer.stopAccepting();
+    }
 
-        console.printInfo("Server shutdown complete.");
+    /**
+     * TLS settings of the running terminal listener, or null when it is plaintext
+     */
+    public static TerminalTls getTls() {
+        return tls;
+    }
+
+    /**
+     * Release the transport once every session is closed
+     */
+    public static void stopTransport() {
+        running = false;
+        if (nioServer != null) {
+            nioServer.stop();
+            nioServer = null;
+        }
     }
 
 }
@@ -7,6 +7,7 @@ import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Config {
@@ -45,10 +46,50 @@ public class Config {
         }
     }
 
+    /**
+     * Use the bundled defaults with some options overridden, without reading or writing
+     * config.yml. For servers embedded in tools such as the load generator.
+     */
+    public static void loadDefaults(Map<String, Object> overrides) {
+        Map<String, Object> options = new HashMap<>();
+        try (InputStream in = Config.class.getClassLoader().getResourceAsStream("config.yml")) {
+            Map<String, Object> defaults = in != null ? new Yaml().load(in) : null;
+            if (defaults != null) options.putAll(defaults);
+        } catch (Exception e) {
+            ConsoleHandler.printError("Failed to load default configuration: " + e.getMessage());
+        }
+        options.putAll(overrides);
+        configMap = options;
+    }
+
     public static Map<String, Object> getConfig() {
         return configMap;
     }
 
+    /**
+     * Read an integer option, falling back to the default when missing or not a number
+     */
+    public static int getInt(String key, int defaultValue) {
+        Object value = configMap != null ? configMap.get(key) : null;
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    /**
+     * Read a boolean option, falling back to the default when missing
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        Object value = configMap != null ? configMap.get(key) : null;
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    /**
+     * Read a string option, falling back to the default when missing or blank
+     */
+    public static String getString(String key, String defaultValue) {
+        Object value = configMap != null ? configMap.get(key) : null;
+        return value != null && !value.toString().isBlank() ? value.toString().trim() : defaultValue;
+    }
+
     public void loadConfig() {
         try {
             this.configMap = config.load(new FileInputStream("config.yml"));
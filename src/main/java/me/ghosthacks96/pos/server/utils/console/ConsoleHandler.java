@@ -1,10 +1,14 @@
 package me.ghosthacks96.pos.server.utils.console;
 
 import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.net.PinningMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static me.ghosthacks96.pos.server.POSServer.shutdownSystem;
 import static me.ghosthacks96.pos.server.POSServer.startServerThread;
@@ -16,6 +20,8 @@ public class ConsoleHandler {
     public static boolean DEBUG = false; // Default to false, can be set via config
     private static volatile String currentInput = "";
     private static volatile boolean waitingForInput = false;
+    // A lock rather than synchronized kept virtual threads from pinning before JEP 491 (Java 24)
+    private static final ReentrantLock printLock = new ReentrantLock();
 
     public ConsoleHandler() {
         // Initialize the console handler
@@ -56,9 +62,11 @@ public class ConsoleHandler {
                 break;
             case "stop":
                 printInfo("Stopping the server...");
-                POSServer.running = false;
                 POSServer.shutdownServer();
                 break;
+            case "drain":
+                POSServer.shutdown.toMap().forEach((key, value) -> printInfo(key + ": " + value));
+                break;
             case "debug":
                 if (!DEBUG) {
                     DEBUG = true;
@@ -67,6 +75,18 @@ public class ConsoleHandler {
                     printWarning("Debug mode is already enabled.");
                 }
                 break;
+            case "pinning":
+                if (PinningMonitor.isRunning()) {
+                    printInfo("Pinned virtual thread events: " + PinningMonitor.getPinnedEvents()
+                            + " (" + PinningMonitor.getPinnedMillis() + "ms total)");
+                    printInfo("Last pinned at: " + PinningMonitor.getLastPinnedAt());
+                } else {
+                    printWarning("Pinning monitor is only active with thread-mode: virtual.");
+                }
+                break;
+            case "commands":
+                printCommandStats();
+                break;
             case "exit":
                 printInfo("Exiting the console...");
                 shutdownSystem();
@@ -74,13 +94,37 @@ public class ConsoleHandler {
             default:
                 printInfo("--Help--");
                 printInfo("- start: Start the server");
-                printInfo("- stop: Stop the server");
+                printInfo("- stop: Drain terminals (finish requests, flush queues) and stop the server");
+                printInfo("- drain: show progress of the current or last drain");
                 printInfo("- debug: toggle debug mode (does not change config setting)");
+                printInfo("- pinning: show virtual thread pinning diagnostics");
+                printInfo("- commands: show per-command call counts, errors and latency");
                 printInfo("- exit/quit: Shut down the server and exit the console");
                 printInfo("- help: Show this help message");
         }
     }
 
+    /**
+     * Per-command metrics, busiest first by total time spent in the handler
+     */
+    private static void printCommandStats() {
+        var commands = new ArrayList<>(ClientHandler.getCommands().commands());
+        commands.removeIf(command -> command.getMetrics().getCalls() == 0);
+        if (commands.isEmpty()) {
+            printInfo("No commands handled yet.");
+            return;
+        }
+        commands.sort((a, b) -> Long.compare(b.getMetrics().getLatency().getTotalNanos(), a.getMetrics().getLatency().getTotalNanos()));
+        for (var command : commands) {
+            var metrics = command.getMetrics();
+            var latency = metrics.getLatency();
+            printInfo(String.format("%-16s calls=%d errors=%d total=%dms p50=%dus p99=%dus max=%dus",
+                    metrics.getName(), metrics.getCalls(), metrics.getErrors(),
+                    latency.getTotalNanos() / 1_000_000, latency.percentileNanos(0.50) / 1_000,
+                    latency.percentileNanos(0.99) / 1_000, latency.getMaxNanos() / 1_000));
+        }
+    }
+
     public static void printInfo(String msg) {
         logger.info(msg);
         printMessage("[INFO] ", ConsoleColors.GREEN_BOLD, msg);
@@ -102,19 +146,24 @@ public class ConsoleHandler {
         printMessage("[ERROR] ", ConsoleColors.RED_BOLD, msg);
     }
 
-    private static synchronized void printMessage(String prefix, String color, String msg) {
-        if (waitingForInput) {
-            // Clear the current prompt line
-            System.out.print("\r\033[2K"); // Move to beginning and erase line
-        }
+    private static void printMessage(String prefix, String color, String msg) {
+        printLock.lock();
+        try {
+            if (waitingForInput) {
+                // Clear the current prompt line
+                System.out.print("\r\033[2K"); // Move to beginning and erase line
+            }
 
-        // Print the message
-        System.out.println(color + prefix + ConsoleColors.RESET + msg);
+            // Print the message
+            System.out.println(color + prefix + ConsoleColors.RESET + msg);
 
-        if (waitingForInput) {
-            // Reprint prompt + restore any typed input (if you track it)
-            System.out.print(PROMPT);
-            System.out.flush();
+            if (waitingForInput) {
+                // Reprint prompt + restore any typed input (if you track it)
+                System.out.print(PROMPT);
+                System.out.flush();
+            }
+        } finally {
+            printLock.unlock();
         }
     }
 }
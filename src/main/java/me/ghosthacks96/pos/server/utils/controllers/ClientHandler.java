@@ -1,365 +1,861 @@
 package me.ghosthacks96.pos.server.utils.controllers;
 
 import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.commands.CmdCommands;
+import me.ghosthacks96.pos.server.utils.controllers.commands.CommandRegistry;
+import me.ghosthacks96.pos.server.utils.controllers.commands.DatCommands;
+import me.ghosthacks96.pos.server.utils.controllers.commands.RecCommands;
+import me.ghosthacks96.pos.server.utils.controllers.commands.TraCommands;
 import me.ghosthacks96.pos.server.utils.models.UserModel;
+import me.ghosthacks96.pos.server.utils.net.HashedWheelTimer;
+import me.ghosthacks96.pos.server.utils.net.OutboundQueue;
+import me.ghosthacks96.pos.server.utils.net.RateLimiter;
+import me.ghosthacks96.pos.server.utils.net.RequestWorkers;
+import me.ghosthacks96.pos.server.utils.net.TerminalThreads;
+import me.ghosthacks96.pos.server.utils.protocol.DeflateOutputStream;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.net.ProtocolException;
 import java.net.Socket;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import static me.ghosthacks96.pos.server.POSServer.console;
 
 public class ClientHandler {
 
-    // Define the delimiter and create a compiled pattern for better performance
     private static final String DELIMITER = "[:_:]";
-    private static final Pattern DELIMITER_PATTERN = Pattern.compile(Pattern.quote(DELIMITER));
-    // Constants for protocol commands
-    private static final String CMD_TEST = "TEST";
-    private static final String CMD_LOGIN = "LOGIN";
-    private static final String CMD_LOGOUT = "LOGOUT";
-    private static final String CMD_DISCONNECT = "DISCONNECT";
-    private static final String CMD = "CMD";
-    private static final String REC = "REC";
-    private static final String TRA = "TRA";
-    private static final String DAT = "DAT";
+    // Protocol prefixes
+    public static final String CMD = "CMD";
+    public static final String REC = "REC";
+    public static final String TRA = "TRA";
+    public static final String DAT = "DAT";
 
     // Response constants
-    private static final String RESPONSE_OK = "OK";
-    private static final String RESPONSE_SUCCESS = "SUCCESS";
-    private static final String RESPONSE_FAIL = "FAIL";
+    public static final String RESPONSE_OK = "OK";
+    public static final String RESPONSE_SUCCESS = "SUCCESS";
+    public static final String RESPONSE_FAIL = "FAIL";
+    // Routing table for every protocol verb; handlers live in utils.controllers.commands
+    private static final CommandRegistry commands = buildCommands();
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
     public Thread clientThread;
     public Socket socket;
-    UserModel user;
+    volatile UserModel user;
+    private volatile String sessionToken;
     String ip;
-    BufferedWriter output;
-    BufferedReader input;
-
-    private static final String[] ALLOWED_PREFIXES = {"CMD", "REC", "TRA", "DAT"};
+    private volatile long sessionId;
+    private final long connectedAt = System.currentTimeMillis();
+    // Reused per connection: inbound messages are tokenized in place and responses encoded in place
+    ResponseEncoder output;
+    MessageParser input;
+    // Everything the encoder flushes lands here; only the transport ever writes to the socket
+    private final OutboundQueue outbound;
+    // Sits between the encoder and the queue; passes bytes through until compression is negotiated
+    private final DeflateOutputStream compression;
+    private Thread writerThread;
+    // Responses can come from the reader thread and from server pushes such as SHUTDOWN
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Responses written while a request is being handled wait for the end of the request
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    // Across all sessions, so a drain can wait for in-flight work to finish
+    private static final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private static final ThreadLocal<RequestContext> requestContext = ThreadLocal.withInitial(RequestContext::new);
+    private static final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "POS-Flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Heartbeats and read/idle timeouts for every session run on this one thread
+    private static final HashedWheelTimer sessionTimer = HashedWheelTimer.fromConfig("POS-Timer");
+    private volatile long lastReadAt = connectedAt;
+    private volatile long lastRequestAt = connectedAt;
+    private volatile long heartbeatSentAt = 0;
+    private volatile HashedWheelTimer.Timeout timeoutCheck;
+    // This session's token buckets; IP and user buckets live in POSServer.rateLimiter
+    private final RateLimiter.Buckets rateLimits = new RateLimiter.Buckets();
+    // Input flips before the negotiation ack is sent, output after, so the ack itself stays text
+    private volatile boolean binaryInput = false;
 
     public ClientHandler(Socket socket) throws Exception {
         this.socket = socket;
         this.ip = socket.getInetAddress().getHostAddress();
-        this.output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-        this.input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.outbound = OutboundQueue.fromConfig(null, null);
+        this.compression = new DeflateOutputStream(outbound.stream());
+        this.output = new ResponseEncoder(compression);
+        this.input = new MessageParser(socket.getInputStream());
+        outbound.setOverflowHandler(this::onOutboundOverflow);
+        startWriter(socket.getOutputStream());
 
         sendToClient("CMD"+DELIMITER+"LOGINREQUEST");
+        checkTimeouts();
         handleClient();
     }
 
+    /**
+     * Create a handler for a connection owned by the NIO transport. No reader or writer thread is
+     * started; the transport frames inbound messages and passes them to
+     * {@link #handleLine(byte[], int)} or {@link #handleFrame(byte[])}, and its selector loop
+     * drains the outbound queue.
+     */
+    public ClientHandler(String ip, OutboundQueue outbound) {
+        this.ip = ip;
+        this.outbound = outbound;
+        this.compression = new DeflateOutputStream(outbound.stream());
+        this.output = new ResponseEncoder(compression);
+        this.input = new MessageParser();
+        outbound.setOverflowHandler(this::onOutboundOverflow);
+
+        sendToClient("CMD"+DELIMITER+"LOGINREQUEST");
+        checkTimeouts();
+    }
+
+    /**
+     * Drain the outbound queue to the socket. This is the only thread that can block on a
+     * terminal that stops reading; once the queue is closed and empty it closes the socket.
+     */
+    private void startWriter(OutputStream socketOut) {
+        writerThread = TerminalThreads.start("POS-Writer-" + ip, () -> {
+            OutputStream out = new BufferedOutputStream(socketOut, 16 * 1024);
+            try {
+                byte[] chunk;
+                while ((chunk = outbound.take()) != null) {
+                    out.write(chunk);
+                    // Pick up whatever queued meanwhile before paying for the flush
+                    while ((chunk = outbound.poll()) != null) out.write(chunk);
+                    out.flush();
+                }
+            } catch (Exception e) {
+                if (POSServer.config != null && console.DEBUG) logger.debug("Write to client {} failed: {}", ip, e.getMessage());
+            } finally {
+                outbound.clear();
+                closeSocket();
+                closeConnection();
+            }
+        });
+    }
+
+    /**
+     * The terminal stopped reading and went over its outbound budget
+     */
+    private void onOutboundOverflow() {
+        console.printWarning("Client " + ip + " exceeded its outbound budget (" + outbound.getPolicy() + " policy); disconnecting.");
+        abort();
+    }
+
+    /**
+     * Drop the connection without waiting for queued output, for a terminal that is gone
+     */
+    private void abort() {
+        outbound.clear();
+        // Mark the session closed before the socket, so the reader does not report the close as an error
+        closeConnection();
+        closeSocket();
+    }
+
+    /**
+     * Timer callback: close a session that has gone quiet, heartbeat one that is getting quiet,
+     * then schedule the next check at the earliest upcoming deadline. Reads only update
+     * timestamps, so a busy session costs one timer entry per deadline, not one per message.
+     */
+    private void checkTimeouts() {
+        if (!isConnected()) return;
+        long now = System.currentTimeMillis();
+        long heartbeat = Config.getInt("heartbeat-interval-ms", 30000);
+        long readTimeout = Config.getInt("read-timeout-ms", 90000);
+        long idleTimeout = Config.getInt("idle-timeout-ms", 1800000);
+
+        // A request still being answered (a long stream, say) counts as activity
+        if (activeRequests.get() == 0) {
+            if (readTimeout > 0 && now - lastReadAt >= readTimeout) {
+                timedOut("nothing received for " + (now - lastReadAt) + " ms");
+                return;
+            }
+            if (idleTimeout > 0 && now - lastRequestAt >= idleTimeout) {
+                timedOut("idle for " + (now - lastRequestAt) + " ms");
+                return;
+            }
+            if (heartbeat > 0 && now - Math.max(lastReadAt, heartbeatSentAt) >= heartbeat) {
+                sendHeartbeat(now);
+            }
+        }
+
+        long next = Long.MAX_VALUE;
+        if (heartbeat > 0) next = Math.min(next, Math.max(lastReadAt, heartbeatSentAt) + heartbeat);
+        if (readTimeout > 0) next = Math.min(next, lastReadAt + readTimeout);
+        if (idleTimeout > 0) next = Math.min(next, lastRequestAt + idleTimeout);
+        if (next == Long.MAX_VALUE) return;
+        timeoutCheck = sessionTimer.schedule(this::checkTimeouts, Math.max(1, next - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send CMD[:_:]TEST; whatever the terminal sends back counts as a sign of life. Skipped if
+     * a response is being written right now, since the timer thread must not wait on the lock.
+     */
+    private void sendHeartbeat(long now) {
+        if (!writeLock.tryLock()) return;
+        try {
+            heartbeatSentAt = now;
+            sendToClient(CMD + DELIMITER + "TEST", true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void timedOut(String reason) {
+        console.printWarning("Client " + ip + " timed out (" + reason + "); disconnecting.");
+        // Closing takes the write lock, so keep it off the timer thread
+        RequestWorkers.submit(this::abort);
+    }
+
     public String getUsername() {
         return user.getUsername();
     }
 
+    /**
+     * Logged-in username, or null before login
+     */
+    public String getUsernameOrNull() {
+        UserModel current = user;
+        return current != null ? current.getUsername() : null;
+    }
+
+    public UserModel getUser() {
+        return user;
+    }
+
+    /**
+     * Set or clear (null) the logged-in user, keeping the session registry's username index current
+     */
+    public void setUser(UserModel user) {
+        POSServer.sessions.unbindUser(this, getUsernameOrNull());
+        this.user = user;
+        if (user != null) POSServer.sessions.bindUser(this, user.getUsername());
+    }
+
+    /**
+     * Resume token last issued to this connection, or null
+     */
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    public void setSessionToken(String sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public boolean isBinary() {
+        ResponseEncoder out = output;
+        return out != null && out.isBinary();
+    }
+
     public String getIp() {
         return ip;
     }
 
     public boolean isConnected() {
-        return output != null && input != null;
+        return output != null;
+    }
+
+    /**
+     * True once the terminal negotiated binary framing; the NIO transport reads this per frame
+     */
+    public boolean isBinaryInput() {
+        return binaryInput;
     }
 
     public boolean sendToClient(String message) {
-        if (output != null) {
-            try {
-                output.write(message);
-                output.newLine();
-                output.flush();
-                if (POSServer.config != null && console.DEBUG) logger.debug("Sent to client {}: {}", ip, message);
-                return true;
-            } catch (Exception e) {
-                logger.error("Error sending message to client {}: {}", ip, e.getMessage(), e);
-            }
+        return sendToClient(message, false);
+    }
+
+    /**
+     * Queue a pre-built message. With {@code flush} set it and anything batched before it go out
+     * immediately, for pushes like SHUTDOWN that must not wait for a batch to fill.
+     */
+    public boolean sendToClient(String message, boolean flush) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            out.line(message);
+            return flush ? flushNow(out) : completeResponse(out);
+        } finally {
+            writeLock.unlock();
         }
-        return false;
     }
 
     /**
-     * Safely parse a message and return the command and arguments
+     * Write out everything batched so far
      */
-    private MessageParts parseMessage(String message) {
-        if (POSServer.config != null && console.DEBUG) logger.debug("Parsing message from client {}: {}", ip, message);
-        if (message == null || message.trim().isEmpty()) {
-            return new MessageParts("", new String[0]);
+    public boolean flush() {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            return out.pendingBytes() == 0 || flushNow(out);
+        } finally {
+            writeLock.unlock();
         }
+    }
+
+    /*
+     * Send a response in whichever wire protocol this terminal negotiated. The fixed-arity
+     * overloads keep the common responses from allocating a varargs array.
+     */
 
-        // Use the compiled pattern for better performance
-        String[] parts = DELIMITER_PATTERN.split(message.trim());
+    public boolean sendResponse(String type, String command) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            out.begin(type, command, correlationId()).end();
+            return completeResponse(out);
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        if (parts.length == 0) {
-            return new MessageParts("", new String[0]);
+    public boolean sendResponse(String type, String command, String part) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            out.begin(type, command, correlationId()).part(part).end();
+            return completeResponse(out);
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        String command = parts[0].toUpperCase().trim();
-        boolean validPrefix = false;
-        for (String prefix : ALLOWED_PREFIXES) {
-            if (command.startsWith(prefix)) {
-                validPrefix = true;
-                break;
+    public boolean sendResponse(String type, String command, String part1, String part2) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            out.begin(type, command, correlationId()).part(part1).part(part2).end();
+            return completeResponse(out);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean sendResponse(String type, String command, String... parts) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            out.begin(type, command, correlationId());
+            for (String part : parts) out.part(part);
+            out.end();
+            return completeResponse(out);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Batch an encoded response. It goes out with the rest of the batch when the current request
+     * finishes, when flush-bytes is reached, or after flush-delay-ms for pushes made outside a
+     * request. Caller holds the write lock.
+     */
+    private boolean completeResponse(ResponseEncoder out) {
+        if (POSServer.config != null && console.DEBUG) logger.debug("Queued for client {}: {}", ip, out.lastMessage());
+        if (out.pendingBytes() >= Config.getInt("flush-bytes", 8192)) {
+            return flushNow(out);
+        }
+        if (activeRequests.get() == 0) {
+            int delay = Config.getInt("flush-delay-ms", 2);
+            if (delay <= 0) return flushNow(out);
+            if (flushScheduled.compareAndSet(false, true)) {
+                flushTimer.schedule(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Push the batched responses to the socket in one write. Caller holds the write lock.
+     */
+    private boolean flushNow(ResponseEncoder out) {
+        try {
+            if (POSServer.config != null && console.DEBUG && out.pendingMessages() > 1) {
+                logger.debug("Flushing {} messages ({} bytes) to client {}", out.pendingMessages(), out.pendingBytes(), ip);
             }
+            out.flush();
+            return true;
+        } catch (Exception e) {
+            logger.error("Error sending message to client {}: {}", ip, e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Start a response that the caller encodes field by field, for replies too large to build as
+     * strings first. Returns null if the terminal is gone; otherwise the caller must call
+     * {@link #endResponse()} in a finally block, since the write lock is held until then.
+     */
+    public ResponseEncoder beginResponse(String type, String command) {
+        ResponseEncoder out = output;
+        if (out == null) return null;
+        boolean begun = false;
+        writeLock.lock();
+        try {
+            out.begin(type, command, correlationId());
+            begun = true;
+            return out;
+        } finally {
+            // endResponse() releases the lock, but only for a response that was started
+            if (!begun) writeLock.unlock();
         }
-        if (!validPrefix) {
-            sendToClient(buildResponse("ERROR", RESPONSE_FAIL, "Invalid message prefix. Must start with CMD, REC, TRA, or DAT."));
-            return new MessageParts("", new String[0]);
+    }
+
+    public void endResponse() {
+        try {
+            ResponseEncoder out = output;
+            if (out != null) {
+                out.end();
+                completeResponse(out);
+            }
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        String[] args = new String[parts.length - 1];
+    /**
+     * End a response started with {@link #beginResponse} and queue it at once as one chunk that
+     * may run past the outbound budget, for a reply the terminal can only take whole
+     */
+    public void endOversizedResponse() {
+        try {
+            ResponseEncoder out = output;
+            if (out != null) {
+                out.end();
+                outbound.allowOversized();
+                flushNow(out);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        // Copy arguments, handling potential null/empty values
-        for (int i = 1; i < parts.length; i++) {
-            args[i - 1] = parts[i] != null ? parts[i].trim() : "";
+    /**
+     * Abandon a response started with {@link #beginResponse} without sending any of it
+     */
+    public void cancelResponse() {
+        try {
+            ResponseEncoder out = output;
+            if (out != null) out.discard();
+        } finally {
+            writeLock.unlock();
         }
+    }
 
-        return new MessageParts(command, args);
+    /**
+     * Flip the connection to binary framing: input first, then the text acknowledgement, then output
+     */
+    public void switchToBinary(String command, String... ack) {
+        binaryInput = true;
+        writeLock.lock();
+        try {
+            sendResponse(CMD, command, ack);
+            if (output != null) output.setBinary(true);
+        } finally {
+            writeLock.unlock();
+        }
     }
 
     /**
-     * Build a response message with proper delimiter
+     * Compress later responses. Like a protocol switch, the acknowledgement itself and anything
+     * batched before it still go out uncompressed.
      */
-    private String buildResponse(String type,String command, String... parts) {
-        StringBuilder response = new StringBuilder(type + DELIMITER + command);
-        for (String part : parts) {
-            response.append(DELIMITER).append(part != null ? part : "");
+    public void enableCompression(String command, String... ack) {
+        writeLock.lock();
+        try {
+            sendResponse(CMD, command, ack);
+            ResponseEncoder out = output;
+            if (out != null) {
+                flushNow(out);
+                compression.enable(Config.getInt("compression-level", 6), Config.getInt("compression-min-bytes", 512));
+            }
+        } finally {
+            writeLock.unlock();
         }
-        return response.toString();
+    }
+
+    public RateLimiter.Buckets getRateLimits() {
+        return rateLimits;
+    }
+
+    public DeflateOutputStream getCompression() {
+        return compression;
     }
 
     /**
      * Validate that we have the expected number of arguments
      */
-    private boolean validateArgCount(String command, String[] args, int expectedCount) {
-        if (args.length != expectedCount) {
+    public boolean validateArgCount(String command, MessageParser msg, int expectedCount) {
+        if (msg.argCount() != expectedCount) {
             String errorMsg = String.format("Invalid argument count for %s. Expected: %d, Got: %d",
-                    command, expectedCount, args.length);
-            sendToClient(buildResponse(CMD,command, RESPONSE_FAIL, errorMsg));
+                    command, expectedCount, msg.argCount());
+            sendResponse(CMD,command, RESPONSE_FAIL, errorMsg);
             return false;
         }
         return true;
     }
 
     public void handleClient() {
-        clientThread = new Thread(() -> {
+        clientThread = TerminalThreads.start("POS-Client-" + ip, () -> {
             try {
-                String message;
-                while ((message = input.readLine()) != null && POSServer.running) {
-                    System.out.println("Received from " + ip + ": " + message);
-
-                    MessageParts parsed = parseMessage(message);
-                    String cmd = parsed.command;
-                    String[] args = parsed.args;
-
-                    switch(cmd){
-                        case "CMD":
-                            handleCMD(args);
-                            break;
-                        case "REC":
-                            handleRec(args);
-                            break;
-                        case "TRA":
-                            handleTra(args);
-                            break;
-                        case "DAT":
-                            handleDat(args);
-                            break;
-                        default:
-                            handleUnknownCommand(message);
-                            break;
+                while (POSServer.running) {
+                    MessageParser msg = input;
+                    if (msg == null) break;
+                    if (binaryInput) {
+                        try {
+                            if (!msg.readFrame()) break;
+                        } catch (ProtocolException e) {
+                            sendResponse("ERROR", RESPONSE_FAIL, "Malformed frame: " + e.getMessage());
+                            continue;
+                        }
+                    } else {
+                        if (!msg.readLine()) break;
                     }
+                    dispatch(msg);
                 }
             } catch (Exception e) {
-                console.printError("Error handling client " + ip + ": " + e.getMessage());
-                logger.error("Error handling client {}: {}", ip, e.getMessage(), e);
+                // A socket we closed ourselves (disconnect, overflow, shutdown) is not an error
+                if (isConnected()) {
+                    console.printError("Error handling client " + ip + ": " + e.getMessage());
+                    logger.error("Error handling client {}: {}", ip, e.getMessage(), e);
+                }
             } finally {
                 closeConnection();
             }
         });
-        clientThread.setDaemon(true);
-        clientThread.start();
-    }
-
-    private void handleDat(String[] args) {
-        if (args.length > 0) {
-            DatabaseHandler db = POSServer.databaseHandler;
-            StringBuilder sb = new StringBuilder();
-            switch (args[0].toUpperCase()) {
-                case "PROD_LIST":
-                    var products = db.getAllProducts();
-                    for (var product : products) {
-                        sb.append(product.get("id")).append("|")
-                          .append(product.get("name")).append("|")
-                          .append(product.get("description")).append("|")
-                          .append(product.get("price")).append("|")
-                          .append(product.get("stock")).append(";");
-                    }
-                    if (sb.length() > 0) sb.setLength(sb.length() - 1);
-                    sendToClient(buildResponse(DAT, "PROD_LIST", sb.toString()));
-                    break;
-                case "U_PERMS":
-                        if(args.length >1){
-                            var userlist = db.getAllUsers();
-                            var found = false;
-                            for (var user : userlist) {
-                                if (user.getUsername().equalsIgnoreCase(args[1])) {
-                                    for(var perm : user.getPermissions()) {
-                                        sb.append(perm).append("|");
-                                    }
-                                    found = true;
-                                    break;
-                                }
-                            }
-                            if (user != null) {
-                                if (!sb.isEmpty()) sb.setLength(sb.length() - 1);
-                                sendToClient(buildResponse(DAT, "U_PERMS", args[1], sb.toString()));
-                            } else {
-                                sendToClient(buildResponse(DAT, "U_PERMS", RESPONSE_FAIL, "User not found"));
-                            }
-                        } else {
-                            sendToClient(buildResponse(DAT, "U_PERMS", RESPONSE_FAIL, "Username required"));
-                        }
+    }
 
-                case "U_DATA":
-                    if (args.length > 1) {
-                        var usersList = db.getAllUsers();
-                        var found = false;
-                        for (var user : usersList) {
-                            if (user.getUsername().equalsIgnoreCase(args[1])) {
-                                sb.append(user.getUsername()).append("|")
-                                  .append(user.isAdmin()).append("|")
-                                  .append(user.isActive()).append("|")
-                                  .append(user.getLastLogin());
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (found) {
-                            sendToClient(buildResponse(DAT, "U_DATA", args[1], sb.toString()));
-                        } else {
-                            sendToClient(buildResponse(DAT, "U_DATA", RESPONSE_FAIL, "User not found"));
-                        }
-                    } else {
-                        sendToClient(buildResponse(DAT, "U_DATA", RESPONSE_FAIL, "Username required"));
-                    }
-                    break;
-                case "TRANSACTION":
-                    if (args.length > 1) {
-                        var txn = db.getTransactionById(args[1]);
-                        if (txn.isEmpty()) {
-                            sendToClient(buildResponse(DAT, "TRANSACTION", RESPONSE_FAIL, "Transaction not found"));
-                        } else {
-                            for (var entry : txn.entrySet()) {
-                                sb.append(entry.getKey()).append("=").append(entry.getValue()).append("|");
-                            }
-                            if (sb.length() > 0) sb.setLength(sb.length() - 1);
-                            sendToClient(buildResponse(DAT, "TRANSACTION", args[1], sb.toString()));
-                        }
-                    } else {
-                        sendToClient(buildResponse(DAT, "TRANSACTION", RESPONSE_FAIL, "Transaction ID required"));
-                    }
-                    break;
-                default:
-                    sendToClient(buildResponse(DAT, args[0], RESPONSE_FAIL, "Unknown DAT command"));
-                    break;
-            }
-        } else {
-            sendToClient(buildResponse(DAT, "UNKNOWN", RESPONSE_FAIL, "Unknown DAT command"));
-        }
+    /**
+     * Parse a single text message and route it to the matching prefix handler
+     */
+    public void handleMessage(String message) throws Exception {
+        input.loadLine(message);
+        dispatch(input);
     }
 
-    private void handleTra(String[] args) {
+    /**
+     * Route a text line framed by the transport, without its line terminator
+     */
+    public void handleLine(byte[] line, int length) throws Exception {
+        input.loadLine(line, 0, length);
+        dispatch(input);
     }
 
-    private void handleRec(String[] args) {
+    /**
+     * Decode a binary frame and route it exactly like the equivalent text message
+     */
+    public void handleFrame(byte[] payload) throws Exception {
+        try {
+            input.loadFrame(payload, 0, payload.length);
+        } catch (ProtocolException e) {
+            sendResponse("ERROR", RESPONSE_FAIL, "Malformed frame: " + e.getMessage());
+            return;
+        }
+        dispatch(input);
     }
 
-    private void handleCMD(String[] args) {
-        switch (args[0]) {
-            case CMD_TEST:
-                handleTestCommand();
-                break;
-            case CMD_LOGIN:
-                handleLoginCommand(args);
-                break;
-            case CMD_LOGOUT:
-                handleLogoutCommand();
-                break;
-            case CMD_DISCONNECT:
-                handleDisconnectCommand();
-                break;
-            default:
-                handleUnknownCommand(args[0]);
-                break;
+    /**
+     * Handle one request. Correlation-tagged DAT lookups are read-only, so they are copied off
+     * the connection and run on the shared request pool while the next request is read; their
+     * responses may overtake earlier ones. Everything else, TRA in particular, runs in arrival
+     * order on the connection's own thread; TRA hands its sales to the writer in that order and
+     * acknowledges them once committed, after replies to any requests that followed.
+     */
+    private void dispatch(MessageParser msg) throws Exception {
+        long now = System.currentTimeMillis();
+        lastReadAt = now;
+        // Heartbeat replies keep the connection alive but do not make it less idle
+        if (!(msg.prefixIs(MessageParser.PREFIX_CMD) && msg.argIs(0, "TEST"))) lastRequestAt = now;
+        if (msg.correlationId() != MessageParser.NO_CORRELATION && msg.prefixIs(MessageParser.PREFIX_DAT)) {
+            MessageParser request = msg.copy();
+            RequestWorkers.submit(() -> {
+                try {
+                    runRequest(request);
+                } catch (Exception e) {
+                    console.printError("Error handling client " + ip + ": " + e.getMessage());
+                    logger.error("Error handling client {}: {}", ip, e.getMessage(), e);
+                }
+            });
+            return;
+        }
+        runRequest(msg);
+    }
+
+    /**
+     * Route a request with its correlation id in scope and send its batched responses together
+     * once it is done
+     */
+    private void runRequest(MessageParser msg) throws Exception {
+        RequestContext context = requestContext.get();
+        ClientHandler previousHandler = context.handler;
+        int previousId = context.correlationId;
+        context.handler = this;
+        context.correlationId = msg.correlationId();
+        activeRequests.incrementAndGet();
+        inFlightRequests.incrementAndGet();
+        try {
+            route(msg);
+        } finally {
+            context.handler = previousHandler;
+            context.correlationId = previousId;
+            activeRequests.decrementAndGet();
+            inFlightRequests.decrementAndGet();
+            flush();
         }
     }
 
-    private void handleTestCommand() {
-        sendToClient(buildResponse(CMD, CMD_TEST, RESPONSE_OK));
+    /**
+     * Correlation id of the request this thread is answering for this terminal, if any. Pushes to
+     * other terminals made while handling a request stay untagged.
+     */
+    private int correlationId() {
+        RequestContext context = requestContext.get();
+        return context.handler == this ? context.correlationId : MessageParser.NO_CORRELATION;
     }
 
-    private void handleLoginCommand(String[] args) {
-        if (!validateArgCount(CMD_LOGIN, args, 3)) {
+    private void route(MessageParser msg) throws Exception {
+        if (POSServer.config != null && console.DEBUG) logger.debug("Received from {}: {}", ip, msg);
+        if (msg.isEmpty()) {
+            sendUnknownCommand("");
+            return;
+        }
+        int prefix = msg.prefix();
+        if (prefix == MessageParser.PREFIX_NONE) {
+            sendResponse("ERROR", RESPONSE_FAIL, "Invalid message prefix. Must start with CMD, REC, TRA, or DAT.");
+            sendUnknownCommand(msg.toString());
+            return;
+        }
+        if (!msg.prefixIs(prefix)) {
+            sendUnknownCommand(msg.toString());
             return;
         }
-        String username = args[1];
-        String password = args[2];
-        if (username.isEmpty() || password.isEmpty()) {
-            sendToClient(buildResponse(CMD, CMD_LOGIN, RESPONSE_FAIL, "Username and password cannot be empty"));
+        if (prefix == MessageParser.PREFIX_TRA && POSServer.shutdown.isDraining()) {
+            // Nothing new gets written while the server drains; the terminal retries elsewhere or later
+            POSServer.shutdown.recordRejectedWrite();
+            sendRetryLater(TRA, msg.argCount() > 0 ? msg.arg(0) : "UNKNOWN", "Server is shutting down",
+                    Config.getInt("drain-retry-after-ms", 30000));
             return;
         }
-        // Authenticate user using the database handler
-        UserModel authenticatedUser = POSServer.databaseHandler.authenticateUser(username, password);
-        if (authenticatedUser != null) {
-            this.user = authenticatedUser;
-            sendToClient(buildResponse(CMD, CMD_LOGIN, RESPONSE_SUCCESS, "Login successful"));
-        } else {
-            sendToClient(buildResponse(CMD, CMD_LOGIN, RESPONSE_FAIL, "Invalid username or password"));
+        CommandRegistry.Command command = commands.lookup(prefix, msg);
+        if (POSServer.rateLimiter.isEnabled()) {
+            long retryAfter = POSServer.rateLimiter.acquire(rateLimits, ip, getUsernameOrNull(), command.getCost());
+            if (retryAfter > 0) {
+                if (POSServer.config != null && console.DEBUG) logger.debug("Rate limited {} {} from {}", command.getPrefix(), command.getName(), ip);
+                sendRetryLater(command.getPrefix(), msg.argCount() > 0 ? msg.arg(0) : "UNKNOWN", "Rate limit exceeded", retryAfter);
+                return;
+            }
         }
+        command.invoke(this, msg);
     }
 
-    private void handleLogoutCommand() {
-        sendToClient(buildResponse(CMD,CMD_LOGOUT, RESPONSE_SUCCESS));
+    /**
+     * Refuse a request the terminal should send again later:
+     * TYPE[:_:]COMMAND[:_:]FAIL[:_:]reason[:_:]RETRY_AFTER[:_:]milliseconds
+     */
+    public boolean sendRetryLater(String type, String command, String reason, long retryAfterMillis) {
+        return sendResponse(type, command, RESPONSE_FAIL, reason, "RETRY_AFTER", String.valueOf(retryAfterMillis));
     }
 
-    private void handleDisconnectCommand() {
-        sendToClient(buildResponse(CMD, CMD_DISCONNECT, RESPONSE_SUCCESS, "Disconnected"));
-        closeConnection();
+    /**
+     * Answer the current request later, from another thread, for handlers that would otherwise
+     * block the connection's thread (or a shared NIO worker) waiting on other work such as a TRA
+     * commit. The reply keeps the request's correlation id, and the request counts as in flight
+     * until it is sent, so a drain waits for it.
+     */
+    public DeferredReply deferReply() {
+        inFlightRequests.incrementAndGet();
+        return new DeferredReply(correlationId());
     }
 
-    private void handleUnknownCommand(String command) {
-        sendToClient(buildResponse("ERROR", RESPONSE_FAIL, "Unknown command: " + command));
-    }
+    /**
+     * A reply promised by {@link #deferReply()}. It may be preceded by any number of responses
+     * started with {@link #beginResponse}; the request is over with the first {@link #send} or
+     * {@link #abandon()}.
+     */
+    public final class DeferredReply {
+        private final int correlationId;
+        private final AtomicBoolean done = new AtomicBoolean();
 
-    private void closeConnection() {
-        try {
-            if (output != null) {
-                output.close();
+        private DeferredReply(int correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        /**
+         * Start an intermediate response, such as a chunk of a stream; finish it with
+         * {@link ClientHandler#endResponse()} or {@link ClientHandler#cancelResponse()}
+         */
+        public ResponseEncoder beginResponse(String type, String command) {
+            return inRequest(() -> ClientHandler.this.beginResponse(type, command));
+        }
+
+        public boolean send(String type, String command, String... parts) {
+            if (!done.compareAndSet(false, true)) return false;
+            try {
+                return inRequest(() -> sendResponse(type, command, parts));
+            } finally {
+                inFlightRequests.decrementAndGet();
             }
-            if (input != null) {
-                input.close();
+        }
+
+        /**
+         * End the request without a final reply, for a terminal that is gone or not reading
+         */
+        public void abandon() {
+            if (done.compareAndSet(false, true)) inFlightRequests.decrementAndGet();
+        }
+
+        private <T> T inRequest(Supplier<T> action) {
+            RequestContext context = requestContext.get();
+            ClientHandler previousHandler = context.handler;
+            int previousId = context.correlationId;
+            context.handler = ClientHandler.this;
+            context.correlationId = correlationId;
+            try {
+                return action.get();
+            } finally {
+                context.handler = previousHandler;
+                context.correlationId = previousId;
             }
-        } catch (Exception e) {
-            System.err.println("Error closing connection for " + user.getUsername() + ": " + e.getMessage());
-        } finally {
-            output = null;
-            input = null;
+        }
+
+        public boolean sendRetryLater(String type, String command, String reason, long retryAfterMillis) {
+            return send(type, command, RESPONSE_FAIL, reason, "RETRY_AFTER", String.valueOf(retryAfterMillis));
         }
     }
 
     /**
-     * Helper class to hold parsed message parts
+     * Run {@code task} on the session timer after {@code delayMillis}
      */
-    private static class MessageParts {
-        final String command;
-        final String[] args;
+    public HashedWheelTimer.Timeout schedule(Runnable task, long delayMillis) {
+        return sessionTimer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static CommandRegistry getCommands() {
+        return commands;
+    }
 
-        MessageParts(String command, String[] args) {
-            this.command = command;
-            this.args = args;
+    /**
+     * Requests being handled right now, across all sessions
+     */
+    public static int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    private static CommandRegistry buildCommands() {
+        CommandRegistry.Builder builder = CommandRegistry.builder();
+        CmdCommands.register(builder);
+        DatCommands.register(builder);
+        TraCommands.register(builder);
+        RecCommands.register(builder);
+        return builder.build();
+    }
+
+    /**
+     * Tell the terminal a request did not match any command
+     */
+    public void sendUnknownCommand(String command) {
+        sendResponse("ERROR", RESPONSE_FAIL, "Unknown command: " + command);
+    }
+
+    /**
+     * Queue a server push (an update the terminal did not ask for). Unlike responses, pushes are
+     * subject to the outbound policy: dropped, or coalesced by key, once the terminal falls
+     * behind. The encoded arrays are shared, not copied.
+     */
+    public boolean push(byte[] textMessage, byte[] binaryMessage, String coalesceKey) {
+        ResponseEncoder out = output;
+        if (out == null) return false;
+        writeLock.lock();
+        try {
+            // Keep pushes behind responses that are already batched
+            if (out.pendingBytes() > 0) flushNow(out);
+            return outbound.offerPush(out.isBinary() ? binaryMessage : textMessage, coalesceKey);
+        } finally {
+            writeLock.unlock();
         }
     }
-}
 
+    public OutboundQueue getOutboundQueue() {
+        return outbound;
+    }
+
+    public void closeConnection() {
+        POSServer.sessions.unregister(this);
+        HashedWheelTimer.Timeout check = timeoutCheck;
+        if (check != null) check.cancel();
+        ResponseEncoder out;
+        writeLock.lock();
+        try {
+            out = output;
+            output = null;
+            input = null;
+            if (out != null) {
+                // Hands any batched responses to the queue, then closes it
+                out.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Error closing connection for " + (user != null ? user.getUsername() : ip) + ": " + e.getMessage());
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+        if (out != null && socket != null) {
+            Thread writer = writerThread;
+            if (writer == null || !writer.isAlive()) {
+                closeSocket();
+            } else {
+                // The writer closes the socket once the queue drains; give up on a terminal that never reads it
+                sessionTimer.schedule(this::closeSocket, Config.getInt("close-drain-ms", 2000), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
 
+    private void closeSocket() {
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            logger.debug("Error closing socket for {}: {}", ip, e.getMessage());
+        }
+    }
 
+    /**
+     * The terminal and correlation id a thread is currently answering
+     */
+    private static final class RequestContext {
+        ClientHandler handler;
+        int correlationId = MessageParser.NO_CORRELATION;
+    }
+}
@@ -0,0 +1,319 @@
+package me.ghosthacks96.pos.server.utils.controllers;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQLite connections for {@link DatabaseHandler}: a fixed number of read-only readers and a single
+ * writer, each kept open and handed out again after use. The database runs in WAL mode, so the
+ * readers see the last commit while the writer is busy, and all writes queue here for the one
+ * writer instead of retrying on SQLITE_BUSY.
+ *
+ * <p>A borrowed connection is a proxy; closing it puts the real connection back, rolled back and in
+ * auto-commit if the caller left a transaction open. Connections are opened as first needed and
+ * checked before being lent out, and a dead one is replaced. A borrower that finds none free waits
+ * up to the pool timeout and then gets an SQLException.
+ *
+ * <p>{@link #close()} closes every connection but leaves the pool usable: the next borrow opens a
+ * new one. The drain closes the database when the terminal server stops, while the web interface
+ * keeps running and the server can be started again.
+ */
+final class ConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+    // Seconds isValid() may take before a connection is treated as dead
+    private static final int VALIDATE_TIMEOUT_S = 1;
+    // How long SQLite itself waits on a lock held by another process, such as a backup tool
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
+    private final String url;
+    private final long timeoutNanos;
+    private final Slots readers;
+    private final Slots writer;
+    // Bumped by close(); connections lent out before that are closed when they come back
+    private final AtomicInteger generation = new AtomicInteger();
+
+    ConnectionPool(String url, int readers, long timeoutMs) {
+        this.url = url;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.readers = new Slots("readers", Math.max(1, readers), true);
+        this.writer = new Slots("writer", 1, false);
+    }
+
+    /**
+     * A read-only connection; close it to give it back
+     */
+    Connection reader() throws SQLException {
+        return readers.borrow();
+    }
+
+    /**
+     * The writer connection; close it to give it back
+     */
+    Connection writer() throws SQLException {
+        return writer.borrow();
+    }
+
+    /**
+     * Close idle connections now and connections still lent out as they come back. Later borrows
+     * open new connections.
+     */
+    void close() {
+        generation.incrementAndGet();
+        readers.closeIdle();
+        writer.closeIdle();
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("readers", readers.toMap());
+        stats.put("writer", writer.toMap());
+        stats.put("timeoutMs", TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+        return stats;
+    }
+
+    /**
+     * One kind of connection: its idle connections and how they have been used
+     */
+    private final class Slots {
+        private final String name;
+        private final int size;
+        private final boolean readOnly;
+        private final BlockingQueue<Connection> idle;
+        private final AtomicInteger open = new AtomicInteger();
+        private final long createdAt = System.nanoTime();
+
+        private final LongAdder borrows = new LongAdder();
+        private final LongAdder waited = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder replaced = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        Slots(String name, int size, boolean readOnly) {
+            this.name = name;
+            this.size = size;
+            this.readOnly = readOnly;
+            this.idle = new ArrayBlockingQueue<>(size);
+        }
+
+        Connection borrow() throws SQLException {
+            int borrowedIn = generation.get();
+            long start = System.nanoTime();
+            Connection conn = idle.poll();
+            if (conn == null) conn = openIfRoom();
+            if (conn == null) {
+                waiting.incrementAndGet();
+                try {
+                    conn = idle.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for a database connection", e);
+                } finally {
+                    waiting.decrementAndGet();
+                }
+                long wait = System.nanoTime() - start;
+                waited.increment();
+                waitNanos.add(wait);
+                maxWaitNanos.accumulateAndGet(wait, Math::max);
+                if (conn == null) {
+                    timeouts.increment();
+                    throw new SQLException("Timed out waiting for a database connection (" + name + ")");
+                }
+            }
+            conn = validate(conn);
+            borrows.increment();
+            inUse.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lent(this, conn, borrowedIn));
+        }
+
+        /**
+         * A new connection if fewer than {@code size} are open, otherwise null
+         */
+        private Connection openIfRoom() throws SQLException {
+            while (true) {
+                int current = open.get();
+                if (current >= size) return null;
+                if (open.compareAndSet(current, current + 1)) break;
+            }
+            try {
+                return openConnection();
+            } catch (SQLException e) {
+                open.decrementAndGet();
+                throw e;
+            }
+        }
+
+        /**
+         * The connection itself if it still works, otherwise a fresh one in its place
+         */
+        private Connection validate(Connection conn) throws SQLException {
+            boolean valid;
+            try {
+                valid = !conn.isClosed() && conn.isValid(VALIDATE_TIMEOUT_S);
+            } catch (SQLException e) {
+                valid = false;
+            }
+            if (valid) return conn;
+            replaced.increment();
+            logger.warn("Replacing dead {} connection", name);
+            closeQuietly(conn);
+            try {
+                return openConnection();
+            } catch (SQLException e) {
+                open.decrementAndGet();
+                throw e;
+            }
+        }
+
+        private Connection openConnection() throws SQLException {
+            Connection conn = DriverManager.getConnection(url);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
+                if (readOnly) {
+                    stmt.execute("PRAGMA query_only = 1");
+                } else {
+                    // Stored in the database file, so readers opened later find it already set
+                    stmt.execute("PRAGMA journal_mode = WAL");
+                }
+            } catch (SQLException e) {
+                closeQuietly(conn);
+                throw e;
+            }
+            if (POSServer.config != null && ConsoleHandler.DEBUG) logger.debug("Opened SQLite {} connection {}/{}", name, open.get(), size);
+            return conn;
+        }
+
+        /**
+         * Take back a connection, undoing whatever transaction the borrower left open
+         */
+        void release(Connection conn, long borrowedAt, int borrowedIn) {
+            busyNanos.add(System.nanoTime() - borrowedAt);
+            inUse.decrementAndGet();
+            boolean reusable = borrowedIn == generation.get();
+            if (reusable) {
+                try {
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    logger.warn("Discarding {} connection that could not be reset: {}", name, e.getMessage());
+                    reusable = false;
+                }
+            }
+            if (reusable && idle.offer(conn)) {
+                // The pool may have been closed while this one went back
+                if (borrowedIn != generation.get()) closeIdle();
+                return;
+            }
+            open.decrementAndGet();
+            closeQuietly(conn);
+        }
+
+        void closeIdle() {
+            Connection conn;
+            while ((conn = idle.poll()) != null) {
+                open.decrementAndGet();
+                closeQuietly(conn);
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long borrowCount = borrows.sum();
+            long waitCount = waited.sum();
+            long uptime = Math.max(1, System.nanoTime() - createdAt);
+            stats.put("size", size);
+            stats.put("open", open.get());
+            stats.put("inUse", inUse.get());
+            stats.put("waiting", waiting.get());
+            stats.put("borrows", borrowCount);
+            stats.put("waited", waitCount);
+            stats.put("avgWaitUs", waitCount == 0 ? 0 : Math.round(waitNanos.sum() / 100.0 / waitCount) / 10.0);
+            stats.put("maxWaitMs", Math.round(maxWaitNanos.get() / 100_000.0) / 10.0);
+            stats.put("timeouts", timeouts.sum());
+            stats.put("replaced", replaced.sum());
+            // Share of the pool's connection time spent lent out since it was created
+            stats.put("utilization", Math.round(busyNanos.sum() * 1000.0 / ((double) uptime * size)) / 1000.0);
+            return stats;
+        }
+    }
+
+    /**
+     * The borrower's view of a connection: close() hands it back, and it is unusable afterwards
+     */
+    private static final class Lent implements InvocationHandler {
+        private final Slots owner;
+        private final int borrowedIn;
+        private final long borrowedAt = System.nanoTime();
+        private Connection conn;
+
+        Lent(Slots owner, Connection conn, int borrowedIn) {
+            this.owner = owner;
+            this.conn = conn;
+            this.borrowedIn = borrowedIn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    Connection returned = conn;
+                    conn = null;
+                    if (returned != null) owner.release(returned, borrowedAt, borrowedIn);
+                    return null;
+                }
+                case "isClosed" -> {
+                    return conn == null || conn.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled " + owner.name + " connection" + (conn == null ? " (returned)" : "");
+                }
+            }
+            if (conn == null) throw new SQLException("Connection already returned to the pool");
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("Error closing SQLite connection: {}", e.getMessage());
+        }
+    }
+}
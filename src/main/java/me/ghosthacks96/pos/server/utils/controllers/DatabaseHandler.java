@@ -1,18 +1,22 @@
 package me.ghosthacks96.pos.server.utils.controllers;
 
 import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
 import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
 import me.ghosthacks96.pos.server.utils.models.*;
+import me.ghosthacks96.pos.server.utils.net.Broadcaster;
 import me.ghosthacks96.pos.server.utils.perms.PermissionCategory;
 import me.ghosthacks96.pos.server.utils.perms.PermissionLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Base64;
@@ -22,9 +26,8 @@ public class DatabaseHandler {
     // SQLite database file path
     private static String DB_URL = "jdbc:sqlite:";
 
-    // Connection pool (simple implementation)
-    private final Map<Thread, Connection> connectionPool = new ConcurrentHashMap<>();
-    private final Object poolLock = new Object();
+    // Reader connections and the single writer, reused across calls
+    private final ConnectionPool pool;
 
     // SQL Queries (SQLite syntax)
     private static final String CREATE_USERS_TABLE = """
@@ -82,6 +85,39 @@ public class DatabaseHandler {
             status TEXT NOT NULL
         )
     """;
+    // Product name and category are copied at sale time so receipts survive catalog edits
+    private static final String CREATE_TRANSACTION_ITEMS_TABLE = """
+        CREATE TABLE IF NOT EXISTS transaction_items (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            transaction_id TEXT NOT NULL,
+            product_id TEXT NOT NULL,
+            product_name TEXT,
+            product_category TEXT,
+            quantity INTEGER NOT NULL,
+            unit_price REAL NOT NULL,
+            line_total REAL NOT NULL,
+            discount_amount REAL DEFAULT 0.00,
+            FOREIGN KEY (transaction_id) REFERENCES transactions(transaction_id) ON DELETE CASCADE
+        )
+    """;
+    private static final String CREATE_TRANSACTION_ITEMS_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_transaction_items_transaction ON transaction_items (transaction_id)";
+    private static final String INSERT_TRANSACTION = """
+        INSERT INTO transactions (transaction_id, customer_id, employee_id, timestamp, subtotal, tax_amount,
+                                  discount_amount, total_amount, payment_method, status)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+    private static final String INSERT_TRANSACTION_ITEM = """
+        INSERT INTO transaction_items (transaction_id, product_id, product_name, product_category, quantity,
+                                       unit_price, line_total, discount_amount)
+        VALUES (?, ?, COALESCE(?, (SELECT name FROM products WHERE id = ?)), ?, ?, ?, ?, ?)
+    """;
+    private static final String UPDATE_STOCK_SOLD =
+        "UPDATE products SET stock = stock - ?, updated_at = CURRENT_TIMESTAMP WHERE id = ?";
+    /** Why insertTransactions refused a sale whose id is already taken */
+    public static final String DUPLICATE_TRANSACTION = "Duplicate transaction ID";
+    private static final DateTimeFormatter SQL_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private static final String CREATE_PRODUCTS_TABLE = """
         CREATE TABLE IF NOT EXISTS products (
             id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -94,12 +130,48 @@ public class DatabaseHandler {
         )
     """;
 
+    // One row per product holding the sequence number of its latest change; deleted rows are
+    // tombstones. Triggers keep it current, so every write path bumps the catalog version.
+    private static final String CREATE_CATALOG_CHANGES_TABLE = """
+        CREATE TABLE IF NOT EXISTS catalog_changes (
+            seq INTEGER PRIMARY KEY AUTOINCREMENT,
+            product_id INTEGER NOT NULL UNIQUE,
+            deleted INTEGER NOT NULL DEFAULT 0
+        )
+    """;
+    private static final String[] CREATE_CATALOG_TRIGGERS = {
+        """
+        CREATE TRIGGER IF NOT EXISTS catalog_product_insert AFTER INSERT ON products
+        BEGIN
+            INSERT OR REPLACE INTO catalog_changes (product_id, deleted) VALUES (NEW.id, 0);
+        END
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS catalog_product_update AFTER UPDATE ON products
+        BEGIN
+            INSERT OR REPLACE INTO catalog_changes (product_id, deleted) VALUES (NEW.id, 0);
+        END
+        """,
+        """
+        CREATE TRIGGER IF NOT EXISTS catalog_product_delete AFTER DELETE ON products
+        BEGIN
+            INSERT OR REPLACE INTO catalog_changes (product_id, deleted) VALUES (OLD.id, 1);
+        END
+        """
+    };
+    // Products that predate the change table start out at the current version
+    private static final String SEED_CATALOG_CHANGES = """
+        INSERT INTO catalog_changes (product_id, deleted)
+        SELECT id, 0 FROM products WHERE id NOT IN (SELECT product_id FROM catalog_changes)
+    """;
+
     private static final Logger logger = LoggerFactory.getLogger(DatabaseHandler.class);
 
     public DatabaseHandler(String dbFile) {
-        DB_URL += dbFile;
+        DB_URL = "jdbc:sqlite:" + dbFile;
         ConsoleHandler.printInfo("Initializing SQLite database at: " + DB_URL);
         if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("Initializing SQLite database handler at {}", DB_URL);
+        pool = new ConnectionPool(DB_URL, Config.getInt("db-read-connections", 4), Config.getInt("db-pool-timeout-ms", 5000));
         initializeDatabase();
     }
 
@@ -110,8 +182,8 @@ public class DatabaseHandler {
         try {
             // Load SQLite JDBC driver
             Class.forName("org.sqlite.JDBC");
-            // Test connection
-            try (Connection conn = DriverManager.getConnection(DB_URL)) {
+            // Opening the writer also switches the database to WAL
+            try (Connection conn = getWriteConnection()) {
                 if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("SQLite connection established successfully");
                 // Create tables
                 createTables(conn);
@@ -128,37 +200,25 @@ public class DatabaseHandler {
     }
 
     /**
-     * Get database connection for current thread
+     * Borrow a read-only connection from the pool; closing it gives it back
      */
     private Connection getConnection() throws SQLException {
-        Thread currentThread = Thread.currentThread();
-        Connection conn = connectionPool.get(currentThread);
-        if (conn == null || conn.isClosed()) {
-            synchronized (poolLock) {
-                // Only create a new connection if none exists for the thread
-                conn = DriverManager.getConnection(DB_URL);
-                connectionPool.put(currentThread, conn);
-            }
-        }
-        return conn;
+        return pool.reader();
     }
 
+    /**
+     * Borrow the writer connection; closing it gives it back. Never borrow while holding another
+     * connection, or two callers can each wait on what the other holds.
+     */
+    private Connection getWriteConnection() throws SQLException {
+        return pool.writer();
+    }
 
     /**
-     * Close connection for current thread
+     * Connection pool metrics for /api/stats
      */
-    public void closeConnection() {
-        Thread currentThread = Thread.currentThread();
-        Connection conn = connectionPool.get(currentThread);
-        if (conn != null) {
-            try {
-                conn.close();
-                connectionPool.remove(currentThread);
-                if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("Closed SQLite connection for thread {}", currentThread.getId());
-            } catch (SQLException e) {
-                System.err.println("Error closing SQLite connection: " + e.getMessage());
-            }
-        }
+    public Map<String, Object> poolStats() {
+        return pool.toMap();
     }
 
     /**
@@ -170,7 +230,14 @@ public class DatabaseHandler {
             stmt.execute(CREATE_PERMISSIONS_TABLE);
             stmt.execute(CREATE_USER_PERMISSIONS_TABLE);
             stmt.execute(CREATE_TRANSACTIONS_TABLE);
+            stmt.execute(CREATE_TRANSACTION_ITEMS_TABLE);
+            stmt.execute(CREATE_TRANSACTION_ITEMS_INDEX);
             stmt.execute(CREATE_PRODUCTS_TABLE);
+            stmt.execute(CREATE_CATALOG_CHANGES_TABLE);
+            for (String trigger : CREATE_CATALOG_TRIGGERS) {
+                stmt.execute(trigger);
+            }
+            stmt.execute(SEED_CATALOG_CHANGES);
             if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("SQLite tables created successfully");
         }
     }
@@ -251,46 +318,82 @@ public class DatabaseHandler {
             FROM users 
             WHERE username = ? 
         """;
+        int id;
+        boolean isAdmin;
+        boolean isActive;
+        LocalDateTime last_login;
+        Set<PermissionModel> permissions;
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username.trim());
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String storedHash = rs.getString("password_hash");
-                    String salt = rs.getString("salt");
-                    int id = rs.getInt("id");
-                    boolean isAdmin = rs.getInt("is_admin") == 1;
-                    boolean isActive = rs.getInt("is_active") == 1;
-                    if (verifyPassword(password, storedHash, salt)) {
-                        try (PreparedStatement updateStmt = conn.prepareStatement(
-                                "UPDATE users SET last_login = CURRENT_TIMESTAMP WHERE id = ?")) {
-                            updateStmt.setInt(1, id);
-                            updateStmt.executeUpdate();
-                        }
-                        // Create user model
-                        LocalDateTime last_login = rs.getTimestamp("last_login") != null ?
-                                rs.getTimestamp("last_login").toLocalDateTime() : null;
-                        Set<PermissionModel> permissions = getUserPermissions(conn, id);
-
-                        UserModel user = new UserModel(username, "", isAdmin, permissions);
-                        user.setActive(isActive);
-                        user.setLastLogin(last_login);
-
-                        return user;
-                    }
-                }else{
+                if (!rs.next()) {
                     logger.warn("User not found: {}", username);
+                    return null;
                 }
-            } catch (SQLException e) {
-                logger.error("Error authenticating user: {}", e.getMessage(), e);
-                e.printStackTrace();
+                if (!verifyPassword(password, rs.getString("password_hash"), rs.getString("salt"))) {
+                    return null;
+                }
+                id = rs.getInt("id");
+                isAdmin = rs.getInt("is_admin") == 1;
+                isActive = rs.getInt("is_active") == 1;
+                last_login = rs.getTimestamp("last_login") != null ?
+                        rs.getTimestamp("last_login").toLocalDateTime() : null;
             }
+            permissions = getUserPermissions(conn, id);
         } catch (SQLException e) {
+            logger.error("Error authenticating user: {}", e.getMessage(), e);
             System.err.println("Error authenticating user: " + e.getMessage());
-            e.printStackTrace();
+            return null;
+        }
+        // The reader is returned before the writer is taken, so a login never holds both
+        try (Connection conn = getWriteConnection();
+             PreparedStatement updateStmt = conn.prepareStatement(
+                     "UPDATE users SET last_login = CURRENT_TIMESTAMP WHERE id = ?")) {
+            updateStmt.setInt(1, id);
+            updateStmt.executeUpdate();
+        } catch (SQLException e) {
+            // The credentials were good; a missed last_login stamp does not refuse the login
+            logger.error("Error recording login for {}: {}", username, e.getMessage(), e);
         }
 
-        return null;
+        UserModel user = new UserModel(username, "", isAdmin, permissions);
+        user.setId(id);
+        user.setActive(isActive);
+        user.setLastLogin(last_login);
+        return user;
+    }
+
+    /**
+     * Current state of a user by id, with permissions, or null if there is no such user
+     */
+    public UserModel getUserById(int id) {
+        String sql = "SELECT id, username, is_admin, is_active, last_login FROM users WHERE id = ?";
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, id);
+            String username;
+            boolean isAdmin;
+            boolean isActive;
+            LocalDateTime lastLogin;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) return null;
+                username = rs.getString("username");
+                isAdmin = rs.getInt("is_admin") == 1;
+                isActive = rs.getInt("is_active") == 1;
+                lastLogin = rs.getTimestamp("last_login") != null ?
+                        rs.getTimestamp("last_login").toLocalDateTime() : null;
+            }
+            UserModel user = new UserModel(username, "", isAdmin, getUserPermissions(conn, id));
+            user.setId(id);
+            user.setActive(isActive);
+            user.setLastLogin(lastLogin);
+            return user;
+        } catch (SQLException e) {
+            logger.error("Error loading user {}: {}", id, e.getMessage(), e);
+            System.err.println("Error loading user: " + e.getMessage());
+            return null;
+        }
     }
 
     /**
@@ -357,7 +460,7 @@ public class DatabaseHandler {
         if (username == null || username.trim().isEmpty() || password == null || password.trim().isEmpty()) {
             return false;
         }
-        try (Connection conn = getConnection()) {
+        try (Connection conn = getWriteConnection()) {
             conn.setAutoCommit(false);
             try {
                 String salt = generateSalt();
@@ -494,6 +597,7 @@ public class DatabaseHandler {
                 Set<PermissionModel> permissions = getUserPermissions(conn,rs.getInt("id"));
 
                 UserModel user = new UserModel(username, "", isAdmin, permissions);
+                user.setId(rs.getInt("id"));
                 user.setActive(isActive);
                 user.setLastLogin(timestamp);
 
@@ -531,6 +635,455 @@ public class DatabaseHandler {
         return products;
     }
 
+    /**
+     * Receives product rows one at a time, straight off the ResultSet
+     */
+    public interface ProductVisitor {
+        /**
+         * @return false to stop reading further rows
+         */
+        boolean visit(int id, String name, String description, BigDecimal price, int stock);
+    }
+
+    /**
+     * Walk products in id order starting after {@code afterId}, without building a list.
+     * A {@code limit} of zero or less means no limit. Returns the number of rows visited.
+     */
+    public int forEachProduct(int afterId, int limit, ProductVisitor visitor) {
+        String sql = "SELECT id, name, description, price, stock FROM products WHERE id > ? ORDER BY id LIMIT ?";
+        int count = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit > 0 ? limit : -1);
+            ps.setFetchSize(256);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    count++;
+                    if (!visitor.visit(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4), rs.getInt(5))) {
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading products after id {}: {}", afterId, e.getMessage(), e);
+        }
+        return count;
+    }
+
+    /**
+     * Current catalog version: the sequence number of the latest product change, 0 if none
+     */
+    public long getCatalogVersion() {
+        String sql = "SELECT COALESCE(MAX(seq), 0) FROM catalog_changes";
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) return rs.getLong(1);
+        } catch (SQLException e) {
+            logger.error("Error reading catalog version: {}", e.getMessage(), e);
+        }
+        return 0;
+    }
+
+    /**
+     * Visit products changed after version {@code since} up to and including {@code upTo}, in
+     * change order. Returns the number of rows visited.
+     */
+    public int forEachProductChange(long since, long upTo, ProductVisitor visitor) {
+        String sql = """
+            SELECT p.id, p.name, p.description, p.price, p.stock
+            FROM catalog_changes c
+            JOIN products p ON p.id = c.product_id
+            WHERE c.seq > ? AND c.seq <= ? AND c.deleted = 0
+            ORDER BY c.seq
+        """;
+        int count = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, since);
+            ps.setLong(2, upTo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    count++;
+                    if (!visitor.visit(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4), rs.getInt(5))) {
+                        break;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading catalog changes since {}: {}", since, e.getMessage(), e);
+        }
+        return count;
+    }
+
+    /**
+     * Ids of products deleted after version {@code since} up to and including {@code upTo}
+     */
+    public List<Integer> getDeletedProductIds(long since, long upTo) {
+        List<Integer> ids = new ArrayList<>();
+        String sql = "SELECT product_id FROM catalog_changes WHERE seq > ? AND seq <= ? AND deleted = 1 ORDER BY seq";
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, since);
+            ps.setLong(2, upTo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error reading deleted products since {}: {}", since, e.getMessage(), e);
+        }
+        return ids;
+    }
+
+    /**
+     * Get a single product, or null if it does not exist
+     */
+    public Map<String, Object> getProductById(int id) {
+        try (Connection conn = getConnection()) {
+            return readProduct(conn, id);
+        } catch (SQLException e) {
+            logger.error("Error retrieving product {}: {}", id, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    private static Map<String, Object> readProduct(Connection conn, int id) throws SQLException {
+        String sql = "SELECT id, name, description, price, stock FROM products WHERE id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return null;
+                Map<String, Object> product = new HashMap<>();
+                product.put("id", rs.getInt("id"));
+                product.put("name", rs.getString("name"));
+                product.put("description", rs.getString("description"));
+                product.put("price", rs.getBigDecimal("price"));
+                product.put("stock", rs.getInt("stock"));
+                return product;
+            }
+        }
+    }
+
+    /**
+     * Create a product and push it to the terminals. Returns the stored product, or null on error.
+     */
+    public Map<String, Object> createProduct(String name, String description, BigDecimal price, int stock) {
+        String sql = "INSERT INTO products (name, description, price, stock) VALUES (?, ?, ?, ?)";
+        Map<String, Object> product = null;
+        try (Connection conn = getWriteConnection();
+             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.setString(2, description);
+            ps.setBigDecimal(3, price);
+            ps.setInt(4, stock);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    product = new HashMap<>();
+                    product.put("id", keys.getInt(1));
+                    product.put("name", name);
+                    product.put("description", description);
+                    product.put("price", price);
+                    product.put("stock", stock);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error creating product {}: {}", name, e.getMessage(), e);
+        }
+        if (product != null) POSServer.broadcaster.productChanged(Broadcaster.ProductChange.ADDED, product);
+        return product;
+    }
+
+    /**
+     * Apply the given fields (name, description, price, stock) to a product and push the result.
+     * Only the fields present in {@code changes} are written, so stock taken off by sales committed
+     * meanwhile is kept; the pushed product is read back on the writer after the update. A change to
+     * only the price or only the stock is pushed as a PRICE or STOCK event. Returns the updated
+     * product, or null if it does not exist.
+     */
+    public Map<String, Object> updateProduct(int id, Map<String, Object> changes) {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (changes.containsKey("name")) {
+            columns.add("name");
+            values.add(String.valueOf(changes.get("name")));
+        }
+        if (changes.containsKey("description")) {
+            columns.add("description");
+            values.add(changes.get("description") != null ? String.valueOf(changes.get("description")) : null);
+        }
+        if (changes.containsKey("price")) {
+            columns.add("price");
+            values.add(new BigDecimal(String.valueOf(changes.get("price"))));
+        }
+        if (changes.containsKey("stock")) {
+            columns.add("stock");
+            values.add(((Number) changes.get("stock")).intValue());
+        }
+
+        Map<String, Object> current;
+        Map<String, Object> updated;
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                current = readProduct(conn, id);
+                if (current == null) return null;
+                if (columns.isEmpty()) return current;
+                StringBuilder sql = new StringBuilder("UPDATE products SET ");
+                for (String column : columns) sql.append(column).append(" = ?, ");
+                sql.append("updated_at = CURRENT_TIMESTAMP WHERE id = ?");
+                try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < values.size(); i++) ps.setObject(i + 1, values.get(i));
+                    ps.setInt(values.size() + 1, id);
+                    ps.executeUpdate();
+                }
+                updated = readProduct(conn, id);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error updating product {}: {}", id, e.getMessage(), e);
+            return null;
+        }
+        if (updated == null) return null;
+
+        boolean detailsChanged = !Objects.equals(current.get("name"), updated.get("name"))
+                || !Objects.equals(current.get("description"), updated.get("description"));
+        boolean priceChanged = ((BigDecimal) current.get("price")).compareTo((BigDecimal) updated.get("price")) != 0;
+        boolean stockChanged = !Objects.equals(current.get("stock"), updated.get("stock"));
+        Broadcaster.ProductChange change;
+        if (detailsChanged || (priceChanged && stockChanged)) {
+            change = Broadcaster.ProductChange.UPDATED;
+        } else if (priceChanged) {
+            change = Broadcaster.ProductChange.PRICE;
+        } else if (stockChanged) {
+            change = Broadcaster.ProductChange.STOCK;
+        } else {
+            return updated;
+        }
+        POSServer.broadcaster.productChanged(change, updated);
+        return updated;
+    }
+
+    /**
+     * Delete a product and tell the terminals. Returns false if it did not exist.
+     */
+    public boolean deleteProduct(int id) {
+        String sql = "DELETE FROM products WHERE id = ?";
+        try (Connection conn = getWriteConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            if (ps.executeUpdate() == 0) return false;
+        } catch (SQLException e) {
+            logger.error("Error deleting product {}: {}", id, e.getMessage(), e);
+            return false;
+        }
+        POSServer.broadcaster.productRemoved(id);
+        return true;
+    }
+
+    /**
+     * Store a batch of sales with their items in one SQLite transaction, so the whole batch costs
+     * one commit, and take completed sales' quantities off stock. Ids already stored, or repeated
+     * within the batch, are refused up front so the rest can go in as prepared-statement batches;
+     * should a batch still fail, each sale is retried under its own savepoint and only the ones
+     * that fail again are rejected. Returns, per sale, null if it was stored or why it was not; ids
+     * of products whose stock changed go into {@code stockChanged}.
+     */
+    public String[] insertTransactions(List<TransactionModel> batch, Set<Integer> stockChanged) {
+        String[] errors = new String[batch.size()];
+        Set<Integer> changed = new HashSet<>();
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                markDuplicates(conn, batch, errors);
+                try {
+                    insertBatched(conn, batch, errors, changed);
+                } catch (SQLException e) {
+                    if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("Batched insert failed, storing sales one by one: {}", e.getMessage());
+                    conn.rollback();
+                    changed.clear();
+                    insertEach(conn, batch, errors, changed);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Error storing {} transactions: {}", batch.size(), e.getMessage(), e);
+            Arrays.fill(errors, "Database error");
+            return errors;
+        }
+        stockChanged.addAll(changed);
+        return errors;
+    }
+
+    /**
+     * Refuse sales whose id is already stored or appears earlier in the batch
+     */
+    private void markDuplicates(Connection conn, List<TransactionModel> batch, String[] errors) throws SQLException {
+        Map<String, Integer> firstIndex = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (firstIndex.putIfAbsent(batch.get(i).transactionId(), i) != null) errors[i] = DUPLICATE_TRANSACTION;
+        }
+        List<String> ids = new ArrayList<>(firstIndex.keySet());
+        // Stay well inside SQLite's bound parameter limit
+        for (int from = 0; from < ids.size(); from += 500) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + 500));
+            String sql = "SELECT transaction_id FROM transactions WHERE transaction_id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) stmt.setString(i + 1, chunk.get(i));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) errors[firstIndex.get(rs.getString(1))] = DUPLICATE_TRANSACTION;
+                }
+            }
+        }
+    }
+
+    private void insertBatched(Connection conn, List<TransactionModel> batch, String[] errors, Set<Integer> changed) throws SQLException {
+        List<Integer> stockIds = new ArrayList<>();
+        try (PreparedStatement sale = conn.prepareStatement(INSERT_TRANSACTION);
+             PreparedStatement item = conn.prepareStatement(INSERT_TRANSACTION_ITEM);
+             PreparedStatement stock = conn.prepareStatement(UPDATE_STOCK_SOLD)) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (errors[i] != null) continue;
+                addTransaction(batch.get(i), sale, item, stock, stockIds);
+            }
+            sale.executeBatch();
+            item.executeBatch();
+            int[] updated = stock.executeBatch();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] > 0) changed.add(stockIds.get(i));
+            }
+        }
+    }
+
+    private void insertEach(Connection conn, List<TransactionModel> batch, String[] errors, Set<Integer> changed) throws SQLException {
+        try (Statement savepoints = conn.createStatement();
+             PreparedStatement sale = conn.prepareStatement(INSERT_TRANSACTION);
+             PreparedStatement item = conn.prepareStatement(INSERT_TRANSACTION_ITEM);
+             PreparedStatement stock = conn.prepareStatement(UPDATE_STOCK_SOLD)) {
+            List<Integer> stockIds = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (errors[i] != null) continue;
+                stockIds.clear();
+                savepoints.execute("SAVEPOINT sale");
+                try {
+                    addTransaction(batch.get(i), sale, item, stock, stockIds);
+                    sale.executeBatch();
+                    item.executeBatch();
+                    int[] updated = stock.executeBatch();
+                    savepoints.execute("RELEASE sale");
+                    for (int j = 0; j < updated.length; j++) {
+                        if (updated[j] > 0) changed.add(stockIds.get(j));
+                    }
+                } catch (SQLException e) {
+                    sale.clearBatch();
+                    item.clearBatch();
+                    stock.clearBatch();
+                    savepoints.execute("ROLLBACK TO sale");
+                    savepoints.execute("RELEASE sale");
+                    errors[i] = describeInsertError(e);
+                    if (POSServer.config != null && POSServer.console.DEBUG) logger.debug("Transaction {} not stored: {}", batch.get(i).transactionId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add one sale, its items and, when completed, its stock updates to the statements' batches;
+     * the product id of each stock update is appended to {@code stockIds}
+     */
+    private void addTransaction(TransactionModel txn, PreparedStatement sale, PreparedStatement item,
+                                PreparedStatement stock, List<Integer> stockIds) throws SQLException {
+        sale.setString(1, txn.transactionId());
+        sale.setString(2, txn.customerId());
+        sale.setString(3, txn.employeeId());
+        sale.setString(4, txn.timestamp().format(SQL_TIMESTAMP));
+        sale.setBigDecimal(5, txn.subtotal());
+        sale.setBigDecimal(6, txn.taxAmount());
+        sale.setBigDecimal(7, txn.discountAmount());
+        sale.setBigDecimal(8, txn.totalAmount());
+        sale.setString(9, txn.paymentMethod().name());
+        sale.setString(10, txn.status().name());
+        sale.addBatch();
+
+        for (TransactionItem line : txn.items()) {
+            Integer productId = catalogId(line.productId());
+            item.setString(1, txn.transactionId());
+            item.setString(2, line.productId());
+            item.setString(3, line.productName());
+            if (productId != null) item.setInt(4, productId); else item.setNull(4, Types.INTEGER);
+            item.setString(5, line.productCategory());
+            item.setInt(6, line.quantity());
+            item.setBigDecimal(7, line.unitPrice());
+            item.setBigDecimal(8, line.lineTotal());
+            item.setBigDecimal(9, line.discountAmount());
+            item.addBatch();
+
+            if (productId != null && txn.isCompleted()) {
+                stock.setInt(1, line.quantity());
+                stock.setInt(2, productId);
+                stock.addBatch();
+                stockIds.add(productId);
+            }
+        }
+    }
+
+    /**
+     * Catalog products have integer ids; anything else (open-price items, say) is not stocked
+     */
+    private static Integer catalogId(String productId) {
+        try {
+            return Integer.valueOf(productId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String describeInsertError(SQLException e) {
+        String message = e.getMessage() != null ? e.getMessage() : "";
+        if (message.contains("UNIQUE constraint failed: transactions.transaction_id")) return DUPLICATE_TRANSACTION;
+        return "Database error";
+    }
+
+    /**
+     * Total amount of each stored transaction among {@code transactionIds}, found through the
+     * transaction_id index; ids not stored are absent from the result
+     */
+    public Map<String, BigDecimal> getTransactionTotals(Collection<String> transactionIds) {
+        Map<String, BigDecimal> totals = new HashMap<>();
+        List<String> ids = new ArrayList<>(transactionIds);
+        try (Connection conn = getConnection()) {
+            // Stay well inside SQLite's bound parameter limit
+            for (int from = 0; from < ids.size(); from += 500) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + 500));
+                String sql = "SELECT transaction_id, total_amount FROM transactions WHERE transaction_id IN ("
+                        + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) stmt.setString(i + 1, chunk.get(i));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) totals.put(rs.getString(1), rs.getBigDecimal(2));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error looking up transactions: {}", e.getMessage(), e);
+        }
+        return totals;
+    }
+
     /**
      * Get a transaction by its transaction_id
      */
@@ -558,20 +1111,59 @@ public class DatabaseHandler {
     }
 
     /**
-     * Close all connections and cleanup
+     * A stored sale with its items, or null if there is no such transaction or it has no items
+     * (sales recorded before transaction_items existed)
      */
-    public void shutdown() {
-        for (Connection conn : connectionPool.values()) {
-            try {
-                if (conn != null && !conn.isClosed()) {
-                    conn.close();
+    public TransactionModel getTransactionWithItems(String transactionId) {
+        String saleSql = """
+            SELECT transaction_id, customer_id, employee_id, timestamp, subtotal, tax_amount, discount_amount,
+                   total_amount, payment_method, status
+            FROM transactions WHERE transaction_id = ?
+        """;
+        String itemsSql = """
+            SELECT product_id, product_name, product_category, quantity, unit_price, line_total, discount_amount
+            FROM transaction_items WHERE transaction_id = ? ORDER BY id
+        """;
+        try (Connection conn = getConnection();
+             PreparedStatement saleStmt = conn.prepareStatement(saleSql);
+             PreparedStatement itemsStmt = conn.prepareStatement(itemsSql)) {
+            List<TransactionItem> items = new ArrayList<>();
+            itemsStmt.setString(1, transactionId);
+            try (ResultSet rs = itemsStmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new TransactionItem(rs.getString("product_id"), rs.getString("product_name"),
+                            rs.getString("product_category"), rs.getInt("quantity"), money(rs, "unit_price"),
+                            money(rs, "line_total"), money(rs, "discount_amount")));
                 }
-            } catch (SQLException e) {
-                System.err.println("Error closing connection during shutdown: " + e.getMessage());
             }
+            if (items.isEmpty()) return null;
+            saleStmt.setString(1, transactionId);
+            try (ResultSet rs = saleStmt.executeQuery()) {
+                if (!rs.next()) return null;
+                return new TransactionModel(rs.getString("transaction_id"), rs.getString("customer_id"),
+                        rs.getString("employee_id"), LocalDateTime.parse(rs.getString("timestamp"), SQL_TIMESTAMP), items,
+                        money(rs, "subtotal"), money(rs, "tax_amount"), money(rs, "discount_amount"),
+                        money(rs, "total_amount"), PaymentMethod.valueOf(rs.getString("payment_method")),
+                        TransactionStatus.valueOf(rs.getString("status")));
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.error("Error retrieving transaction {} with items: {}", transactionId, e.getMessage(), e);
+            return null;
         }
-        connectionPool.clear();
+    }
+
+    // Amounts are stored as REAL; read them back at cent precision
+    private static BigDecimal money(ResultSet rs, String column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        return value != null ? value.setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO.setScale(2);
+    }
+
+    /**
+     * Close all connections. The handler stays usable and reopens connections as needed, so the
+     * terminal server can be started again after a drain.
+     */
+    public void shutdown() {
+        pool.close();
         System.out.println("Database handler shutdown complete");
     }
 }
-
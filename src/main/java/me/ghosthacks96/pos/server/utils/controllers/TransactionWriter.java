@@ -0,0 +1,345 @@
+package me.ghosthacks96.pos.server.utils.controllers;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import me.ghosthacks96.pos.server.utils.models.TransactionModel;
+import me.ghosthacks96.pos.server.utils.net.Broadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single writer for sales from every terminal. Submissions queue up and the writer thread stores
+ * them in groups, one SQLite transaction (and so one fsync) per group: up to
+ * {@code tra-batch-max} sales, waiting at most {@code tra-batch-wait-ms} after the first for
+ * others to join. A submission's future completes only after its group has committed, so an
+ * acknowledgement sent from it means the sale is on disk. An upload from {@link #submitAll} is
+ * never split across commits.
+ *
+ * <p>Submissions are idempotent by transaction id. The last {@code tra-dedup-size} ids are kept in
+ * memory with their outcome, so a terminal resending a sale after a lost or late acknowledgement
+ * gets the original result, or waits on the original commit, without the database being asked.
+ * An id that has aged out of that window hits the UNIQUE index when stored and is then looked up;
+ * either way the same id with a different total is refused rather than acknowledged.
+ *
+ * <p>The thread starts with the first submission; {@link #flush()} stores whatever is queued and
+ * stops it, and the next submission starts it again.
+ */
+public final class TransactionWriter {
+
+    /** What happened to one sale; error is null when it was stored */
+    public record Result(String transactionId, boolean stored, String error) {
+
+        static Result ok(String transactionId) {
+            return new Result(transactionId, true, null);
+        }
+
+        static Result failed(String transactionId, String error) {
+            return new Result(transactionId, false, error);
+        }
+    }
+
+    /** One submission: a single sale, or a whole upload that is committed together */
+    private record Pending(List<TransactionModel> transactions, List<CompletableFuture<Result>> results) {
+    }
+
+    /** A recently submitted sale: its total, to tell a resend from a reused id, and its outcome */
+    private record Recent(BigDecimal total, CompletableFuture<Result> result) {
+    }
+
+    public static final String ID_REUSED = "Transaction ID already used for a different sale";
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionWriter.class);
+    // How often an idle writer checks whether it has been asked to stop
+    private static final long IDLE_POLL_MS = 100;
+
+    // Bounded by tra-queue-capacity in submit(); config is not loaded yet when this is constructed
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile Thread thread;
+    private volatile boolean stopping;
+    // Access ordered, so the least recently submitted or resent id is evicted first
+    private final Map<String, Recent> recent = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Recent> eldest) {
+            return size() > Config.getInt("tra-dedup-size", 10000);
+        }
+    };
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dedupHits = new LongAdder();
+    private final LongAdder dedupLookups = new LongAdder();
+    private final LongAdder idConflicts = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedSales = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong maxBatch = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    /**
+     * Queue a sale for the next group commit. The future completes once the group is committed,
+     * or straight away if the queue is full.
+     */
+    public CompletableFuture<Result> submit(TransactionModel transaction) {
+        return submitAll(List.of(transaction)).thenApply(results -> results.get(0));
+    }
+
+    /**
+     * Queue sales to be committed together, in one group even if there are more than
+     * {@code tra-batch-max}. Results come back in the order given. Ids seen recently are answered
+     * from the dedup window instead of being queued again.
+     */
+    public CompletableFuture<List<Result>> submitAll(List<TransactionModel> transactions) {
+        submitted.add(transactions.size());
+        List<CompletableFuture<Result>> results = new ArrayList<>(transactions.size());
+        List<TransactionModel> fresh = new ArrayList<>(transactions.size());
+        List<CompletableFuture<Result>> freshResults = new ArrayList<>(transactions.size());
+        synchronized (recent) {
+            for (TransactionModel transaction : transactions) {
+                Recent seen = recent.get(transaction.transactionId());
+                if (seen != null) {
+                    dedupHits.increment();
+                    results.add(sameTotal(seen.total(), transaction.totalAmount()) ? seen.result()
+                            : CompletableFuture.completedFuture(conflict(transaction.transactionId())));
+                    continue;
+                }
+                CompletableFuture<Result> result = new CompletableFuture<>();
+                recent.put(transaction.transactionId(), new Recent(transaction.totalAmount(), result));
+                fresh.add(transaction);
+                freshResults.add(result);
+                results.add(result);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            if (queue.size() >= Config.getInt("tra-queue-capacity", 10000) || !queue.offer(new Pending(fresh, freshResults))) {
+                rejected.add(fresh.size());
+                for (int i = 0; i < fresh.size(); i++) {
+                    complete(fresh.get(i), freshResults.get(i), Result.failed(fresh.get(i).transactionId(), "Transaction queue full"));
+                }
+            } else if (thread == null || stopping) {
+                start();
+            }
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Settle a sale's outcome. A sale that was not stored leaves the dedup window first, so that
+     * sending it again is a new attempt rather than a replay of the failure.
+     */
+    private void complete(TransactionModel transaction, CompletableFuture<Result> future, Result result) {
+        if (!result.stored()) {
+            synchronized (recent) {
+                Recent seen = recent.get(transaction.transactionId());
+                if (seen != null && seen.result() == future) recent.remove(transaction.transactionId());
+            }
+        }
+        future.complete(result);
+    }
+
+    private Result conflict(String transactionId) {
+        idConflicts.increment();
+        return Result.failed(transactionId, ID_REUSED);
+    }
+
+    // Totals are stored as REAL, so compare them at cent precision
+    private static boolean sameTotal(BigDecimal a, BigDecimal b) {
+        return a.setScale(2, RoundingMode.HALF_UP).compareTo(b.setScale(2, RoundingMode.HALF_UP)) == 0;
+    }
+
+    private synchronized void start() {
+        // flush() holds the lock until the old thread is gone, so at most one writer runs
+        if (thread != null) return;
+        Thread writer = new Thread(this::run, "POS-TxnWriter");
+        writer.setDaemon(true);
+        thread = writer;
+        writer.start();
+    }
+
+    /**
+     * Store everything queued and stop the writer thread. Registered as a drain flush hook.
+     */
+    public synchronized void flush() {
+        Thread writer = thread;
+        if (writer == null) return;
+        stopping = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            thread = null;
+            stopping = false;
+        }
+        if (!queue.isEmpty()) start();
+    }
+
+    private void run() {
+        int max = Math.max(1, Config.getInt("tra-batch-max", 256));
+        long waitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, Config.getInt("tra-batch-wait-ms", 2)));
+        List<Pending> batch = new ArrayList<>();
+        try {
+            loop(max, waitNanos, batch);
+        } finally {
+            // Ended by something other than flush(): let the next submission start a new writer
+            if (!stopping && thread == Thread.currentThread()) thread = null;
+        }
+    }
+
+    private void loop(int max, long waitNanos, List<Pending> batch) {
+        while (!stopping || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                int sales = first.transactions().size();
+                // Give sales arriving right behind the first a chance to share its commit
+                long deadline = System.nanoTime() + waitNanos;
+                while (sales < max) {
+                    Pending next = queue.peek();
+                    if (next == null) {
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0 || stopping) break;
+                        next = queue.poll(left, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    } else if (sales + next.transactions().size() > max) {
+                        // An upload bigger than the room left gets a commit of its own next
+                        break;
+                    } else {
+                        queue.poll();
+                    }
+                    batch.add(next);
+                    sales += next.transactions().size();
+                }
+            } catch (InterruptedException e) {
+                // Still store what was taken off the queue
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Throwable t) {
+                    // One bad batch must not stop the writer: fail what it has not answered yet
+                    logger.error("Transaction batch failed: {}", t.getMessage(), t);
+                    for (Pending pending : batch) {
+                        for (int i = 0; i < pending.transactions().size(); i++) {
+                            CompletableFuture<Result> future = pending.results().get(i);
+                            if (future.isDone()) continue;
+                            failed.increment();
+                            complete(pending.transactions().get(i), future,
+                                    Result.failed(pending.transactions().get(i).transactionId(), "Database error"));
+                        }
+                    }
+                    if (t instanceof VirtualMachineError) throw (VirtualMachineError) t;
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<TransactionModel> transactions = new ArrayList<>();
+        for (Pending pending : batch) transactions.addAll(pending.transactions());
+        Set<Integer> stockChanged = new TreeSet<>();
+
+        long start = System.nanoTime();
+        String[] errors;
+        try {
+            errors = POSServer.databaseHandler.insertTransactions(transactions, stockChanged);
+        } catch (RuntimeException e) {
+            logger.error("Transaction batch of {} failed: {}", transactions.size(), e.getMessage(), e);
+            errors = new String[transactions.size()];
+            Arrays.fill(errors, "Database error");
+        }
+        long elapsed = System.nanoTime() - start;
+
+        batches.increment();
+        batchedSales.add(transactions.size());
+        commitNanos.add(elapsed);
+        maxBatch.accumulateAndGet(transactions.size(), Math::max);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+        if (POSServer.config != null && ConsoleHandler.DEBUG) logger.debug("Committed {} transactions in {}us", transactions.size(), elapsed / 1000);
+
+        // Ids the database already had: a resend that outlived the dedup window, or a reused id
+        List<String> duplicates = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (DatabaseHandler.DUPLICATE_TRANSACTION.equals(errors[i])) duplicates.add(transactions.get(i).transactionId());
+        }
+        Map<String, BigDecimal> storedTotals = duplicates.isEmpty() ? Map.of()
+                : POSServer.databaseHandler.getTransactionTotals(duplicates);
+
+        int i = 0;
+        for (Pending pending : batch) {
+            for (int j = 0; j < pending.transactions().size(); j++, i++) {
+                TransactionModel transaction = pending.transactions().get(j);
+                String id = transaction.transactionId();
+                Result result;
+                if (errors[i] == null) {
+                    stored.increment();
+                    result = Result.ok(id);
+                } else if (storedTotals.containsKey(id)) {
+                    dedupLookups.increment();
+                    result = sameTotal(storedTotals.get(id), transaction.totalAmount()) ? Result.ok(id) : conflict(id);
+                } else {
+                    failed.increment();
+                    result = Result.failed(id, errors[i]);
+                }
+                complete(transaction, pending.results().get(j), result);
+            }
+        }
+
+        // Terminals showing stock hear about it after the sale is acknowledged, not before
+        for (int productId : stockChanged) {
+            Map<String, Object> product = POSServer.databaseHandler.getProductById(productId);
+            if (product != null && !product.isEmpty()) {
+                POSServer.broadcaster.productChanged(Broadcaster.ProductChange.STOCK, product);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.sum();
+        stats.put("running", thread != null);
+        stats.put("queueDepth", queue.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("stored", stored.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dedupHits", dedupHits.sum());
+        stats.put("dedupLookups", dedupLookups.sum());
+        stats.put("idConflicts", idConflicts.sum());
+        synchronized (recent) {
+            stats.put("dedupWindow", recent.size());
+        }
+        stats.put("batches", batchCount);
+        stats.put("avgBatch", batchCount == 0 ? 0 : Math.round(batchedSales.sum() * 10.0 / batchCount) / 10.0);
+        stats.put("maxBatch", maxBatch.get());
+        stats.put("avgCommitMs", batchCount == 0 ? 0 : Math.round(commitNanos.sum() / 1000.0 / batchCount) / 1000.0);
+        stats.put("maxCommitMs", Math.round(maxCommitNanos.get() / 1000.0) / 1000.0);
+        return stats;
+    }
+}
@@ -3,6 +3,9 @@ package me.ghosthacks96.pos.server.utils.controllers;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import me.ghosthacks96.pos.server.POSServer;
 import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import me.ghosthacks96.pos.server.utils.net.OutboundQueue;
+import me.ghosthacks96.pos.server.utils.net.TerminalTls;
+import me.ghosthacks96.pos.server.utils.protocol.DeflateOutputStream;
 import me.ghosthacks96.pos.server.utils.web.SettingsServlet;
 import me.ghosthacks96.pos.server.utils.web.TemplateLoader;
 import org.eclipse.jetty.server.Server;
@@ -19,11 +22,13 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 import java.net.InetAddress;
 import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -245,7 +250,7 @@ public class WebInterfaceHandler {
             // Statistics data (placeholder - replace with real data)
             templateData.put("todaySales", "$1,234.56");
             templateData.put("todayTransactions", "42");
-            templateData.put("connectedClients", "3");
+            templateData.put("connectedClients", String.valueOf(POSServer.sessions.size()));
             templateData.put("totalProducts", "156");
 
             // Recent activity (you'd generate this from your transaction log)
@@ -345,6 +350,9 @@ public class WebInterfaceHandler {
                 case "reports" -> handleReports(req);
                 case "stats" -> handleStats();
                 case "clients" -> handleClients();
+                case "commands" -> handleCommands();
+                case "drain" -> handleDrain(method);
+                case "ratelimits" -> handleRateLimits();
                 default -> createErrorResponse("Unknown endpoint: " + pathInfo);
             };
         }
@@ -358,7 +366,8 @@ public class WebInterfaceHandler {
             status.put("uptime", getUptime());
             status.put("endpoints", Arrays.asList(
                     "/api/status", "/api/products", "/api/transactions",
-                    "/api/reports", "/api/stats", "/api/clients"
+                    "/api/reports", "/api/stats", "/api/clients", "/api/commands", "/api/drain",
+                    "/api/ratelimits"
             ));
 
             return toJson(status);
@@ -376,12 +385,7 @@ public class WebInterfaceHandler {
         }
 
         private String getAllProducts() {
-            // In a real implementation, this would query your database
-            List<Map<String, Object>> products = Arrays.asList(
-                    createProductMap("1", "Coffee Beans", "Premium coffee beans", 12.99, 50),
-                    createProductMap("2", "Tea Bags", "Earl Grey tea bags", 8.50, 30),
-                    createProductMap("3", "Muffin", "Blueberry muffin", 3.25, 25)
-            );
+            List<Map<String, Object>> products = POSServer.databaseHandler.getAllProducts();
 
             Map<String, Object> response = new HashMap<>();
             response.put("products", products);
@@ -392,27 +396,36 @@ public class WebInterfaceHandler {
         }
 
         private String getProduct(String id) {
-            // Mock product lookup
-            Map<String, Object> product = createProductMap(id, "Coffee Beans",
-                    "Premium coffee beans", 12.99, 50);
+            Map<String, Object> product = POSServer.databaseHandler.getProductById(parseProductId(id));
+            if (product == null) {
+                return createErrorResponse("Product not found: " + id);
+            }
             return toJson(product);
         }
 
         private String createProduct(HttpServletRequest req) throws IOException {
             String body = req.getReader().lines().collect(Collectors.joining());
-            Map<String, Object> productData = fromJson(body);
+            Map<String, Object> productData = normalizeProduct(fromJson(body));
 
             // Validate required fields
             if (!productData.containsKey("name") || !productData.containsKey("price")) {
                 throw new IllegalArgumentException("Name and price are required");
             }
 
-            // In real implementation, save to database and return created product
-            String newId = String.valueOf(System.currentTimeMillis());
+            // Saving the product pushes it to every terminal that can view inventory
+            Map<String, Object> product = POSServer.databaseHandler.createProduct(
+                    String.valueOf(productData.get("name")),
+                    (String) productData.get("description"),
+                    (BigDecimal) productData.get("price"),
+                    (Integer) productData.getOrDefault("stock", 0));
+            if (product == null) {
+                return createErrorResponse("Product could not be created");
+            }
+
             Map<String, Object> response = new HashMap<>();
-            response.put("id", newId);
+            response.put("id", product.get("id"));
             response.put("message", "Product created successfully");
-            response.put("product", productData);
+            response.put("product", product);
             response.put("timestamp", Instant.now().toString());
 
             return toJson(response);
@@ -424,13 +437,17 @@ public class WebInterfaceHandler {
             }
 
             String body = req.getReader().lines().collect(Collectors.joining());
-            Map<String, Object> productData = fromJson(body);
+            Map<String, Object> productData = normalizeProduct(fromJson(body));
+
+            Map<String, Object> product = POSServer.databaseHandler.updateProduct(parseProductId(id), productData);
+            if (product == null) {
+                return createErrorResponse("Product not found: " + id);
+            }
 
-            // In real implementation, update in database
             Map<String, Object> response = new HashMap<>();
             response.put("id", id);
             response.put("message", "Product updated successfully");
-            response.put("product", productData);
+            response.put("product", product);
             response.put("timestamp", Instant.now().toString());
 
             return toJson(response);
@@ -441,7 +458,10 @@ public class WebInterfaceHandler {
                 throw new IllegalArgumentException("Product ID is required for deletion");
             }
 
-            // In real implementation, delete from database
+            if (!POSServer.databaseHandler.deleteProduct(parseProductId(id))) {
+                return createErrorResponse("Product not found: " + id);
+            }
+
             Map<String, Object> response = new HashMap<>();
             response.put("id", id);
             response.put("message", "Product deleted successfully");
@@ -450,6 +470,32 @@ public class WebInterfaceHandler {
             return toJson(response);
         }
 
+        private int parseProductId(String id) {
+            try {
+                return Integer.parseInt(id);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid product ID: " + id);
+            }
+        }
+
+        /**
+         * Convert JSON product fields to the types the database expects
+         */
+        private Map<String, Object> normalizeProduct(Map<String, Object> data) {
+            Map<String, Object> product = new HashMap<>();
+            if (data.get("name") != null) product.put("name", String.valueOf(data.get("name")));
+            if (data.containsKey("description")) {
+                product.put("description", data.get("description") != null ? String.valueOf(data.get("description")) : null);
+            }
+            try {
+                if (data.get("price") != null) product.put("price", new BigDecimal(String.valueOf(data.get("price"))));
+                if (data.get("stock") != null) product.put("stock", new BigDecimal(String.valueOf(data.get("stock"))).intValueExact());
+            } catch (ArithmeticException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid price or stock");
+            }
+            return product;
+        }
+
         private String handleTransactions(String method, String id, HttpServletRequest req)
                 throws IOException {
             return switch (method) {
@@ -527,17 +573,37 @@ public class WebInterfaceHandler {
             stats.put("totalProducts", 156);
             stats.put("serverUptime", getUptime());
             stats.put("memoryUsage", getMemoryUsage());
+            stats.put("broadcast", POSServer.broadcaster.toMap());
+            stats.put("compression", DeflateOutputStream.totals());
+            TerminalTls tls = POSServer.getTls();
+            if (tls != null) stats.put("tls", tls.toMap());
+            stats.put("transactions", POSServer.transactionWriter.toMap());
+            stats.put("receipts", POSServer.receipts.toMap());
+            stats.put("dbPool", POSServer.databaseHandler.poolStats());
             stats.put("timestamp", Instant.now().toString());
 
             return toJson(stats);
         }
 
         private String handleClients() {
-            // Mock connected clients data
-            List<Map<String, Object>> clients = Arrays.asList(
-                    Map.of("id", "client-1", "ip", "192.168.1.100", "connected", Instant.now().minusSeconds(1800).toString()),
-                    Map.of("id", "client-2", "ip", "192.168.1.101", "connected", Instant.now().minusSeconds(3600).toString())
-            );
+            List<Map<String, Object>> clients = new ArrayList<>();
+            for (ClientHandler client : POSServer.sessions.all()) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("id", client.getSessionId());
+                entry.put("ip", client.getIp());
+                entry.put("username", client.getUsernameOrNull());
+                entry.put("protocol", client.isBinary() ? "binary" : "text");
+                entry.put("connected", Instant.ofEpochMilli(client.getConnectedAt()).toString());
+                OutboundQueue queue = client.getOutboundQueue();
+                entry.put("queueDepth", queue.getDepth());
+                entry.put("queueBytes", queue.getBytes());
+                entry.put("queueHighWaterBytes", queue.getHighWaterBytes());
+                entry.put("dropped", queue.getDropped());
+                entry.put("coalesced", queue.getCoalesced());
+                entry.put("compression", client.getCompression().toMap());
+                entry.put("rateLimits", POSServer.rateLimiter.toMap(client.getRateLimits()));
+                clients.add(entry);
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("clients", clients);
@@ -547,20 +613,50 @@ public class WebInterfaceHandler {
             return toJson(response);
         }
 
-        // Helper methods
-        private Map<String, Object> createProductMap(String id, String name, String description,
-                                                     double price, int stock) {
-            Map<String, Object> product = new HashMap<>();
-            product.put("id", id);
-            product.put("name", name);
-            product.put("description", description);
-            product.put("price", price);
-            product.put("stock", stock);
-            product.put("category", "Beverages");
-            product.put("createdAt", Instant.now().toString());
-            return product;
+        private String handleCommands() {
+            List<Map<String, Object>> commands = new ArrayList<>();
+            for (var command : ClientHandler.getCommands().commands()) {
+                commands.add(command.getMetrics().toMap());
+            }
+            commands.sort((a, b) -> Long.compare((long) b.get("totalMs"), (long) a.get("totalMs")));
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("commands", commands);
+            response.put("timestamp", Instant.now().toString());
+
+            return toJson(response);
         }
 
+        /**
+         * GET reports drain progress; POST starts draining the terminal server
+         */
+        private String handleDrain(String method) {
+            Map<String, Object> response = new HashMap<>();
+            switch (method) {
+                case "GET" -> {
+                }
+                case "POST" -> response.put("started", POSServer.shutdown.drainAsync());
+                default -> {
+                    return createErrorResponse("Method not allowed for drain");
+                }
+            }
+            response.put("drain", POSServer.shutdown.toMap());
+            response.put("timestamp", Instant.now().toString());
+
+            return toJson(response);
+        }
+
+        /**
+         * Token bucket state per IP and per user; per-session buckets are in /api/clients
+         */
+        private String handleRateLimits() {
+            Map<String, Object> response = new HashMap<>(POSServer.rateLimiter.toMap());
+            response.put("timestamp", Instant.now().toString());
+
+            return toJson(response);
+        }
+
+        // Helper methods
         private Map<String, Object> createTransactionMap(String id, String status,
                                                          double total, Instant timestamp) {
             Map<String, Object> transaction = new HashMap<>();
@@ -584,8 +680,7 @@ public class WebInterfaceHandler {
         }
 
         private int getConnectedClientsCount() {
-            // In real implementation, get from connection manager
-            return 3;
+            return POSServer.sessions.size();
         }
 
         private String getUptime() {
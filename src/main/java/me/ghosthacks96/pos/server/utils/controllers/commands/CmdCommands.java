@@ -0,0 +1,139 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.models.UserModel;
+import me.ghosthacks96.pos.server.utils.net.SessionTokens;
+import me.ghosthacks96.pos.server.utils.protocol.BinaryCodec;
+import me.ghosthacks96.pos.server.utils.protocol.DeflateOutputStream;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+
+import static me.ghosthacks96.pos.server.utils.controllers.ClientHandler.*;
+
+/**
+ * Session commands: CMD[:_:]TEST, LOGIN, LOGOUT, DISCONNECT, PROTOCOL and RESUME
+ */
+public final class CmdCommands {
+
+    private static final String CMD_TEST = "TEST";
+    private static final String CMD_LOGIN = "LOGIN";
+    private static final String CMD_LOGOUT = "LOGOUT";
+    private static final String CMD_DISCONNECT = "DISCONNECT";
+    private static final String CMD_PROTOCOL = "PROTOCOL";
+    private static final String CMD_RESUME = "RESUME";
+    private static final String CMD_TOKEN = "TOKEN";
+
+    private CmdCommands() {
+    }
+
+    public static void register(CommandRegistry.Builder builder) {
+        builder.register(MessageParser.PREFIX_CMD, CMD_TEST, CmdCommands::test)
+               // Authentication is expensive: it hashes a password or checks a signature
+               .register(MessageParser.PREFIX_CMD, CMD_LOGIN, CommandRegistry.Cost.EXPENSIVE, CmdCommands::login)
+               .register(MessageParser.PREFIX_CMD, CMD_LOGOUT, CmdCommands::logout)
+               .register(MessageParser.PREFIX_CMD, CMD_DISCONNECT, CmdCommands::disconnect)
+               .register(MessageParser.PREFIX_CMD, CMD_PROTOCOL, CmdCommands::protocol)
+               .register(MessageParser.PREFIX_CMD, CMD_RESUME, CommandRegistry.Cost.EXPENSIVE, CmdCommands::resume)
+               .fallback(MessageParser.PREFIX_CMD, (client, msg) -> client.sendUnknownCommand(msg.arg(0)));
+    }
+
+    private static void test(ClientHandler client, MessageParser msg) {
+        client.sendResponse(CMD, CMD_TEST, RESPONSE_OK);
+    }
+
+    /**
+     * CMD[:_:]LOGIN[:_:]user[:_:]password, optionally followed by DEFLATE to ask for compressed
+     * responses. The SUCCESS reply names DEFLATE when compression was turned on.
+     */
+    private static void login(ClientHandler client, MessageParser msg) {
+        boolean wantsDeflate = msg.argCount() == 4 && msg.argIs(3, DeflateOutputStream.MODE_NAME);
+        if (!wantsDeflate && !client.validateArgCount(CMD_LOGIN, msg, 3)) {
+            return;
+        }
+        String username = msg.arg(1);
+        String password = msg.arg(2);
+        if (username.isEmpty() || password.isEmpty()) {
+            client.sendResponse(CMD, CMD_LOGIN, RESPONSE_FAIL, "Username and password cannot be empty");
+            return;
+        }
+        // Authenticate user using the database handler
+        UserModel authenticatedUser = POSServer.databaseHandler.authenticateUser(username, password);
+        if (authenticatedUser != null) {
+            client.setUser(authenticatedUser);
+            if (wantsDeflate && Config.getBoolean("compression-enabled", true)) {
+                client.enableCompression(CMD_LOGIN, RESPONSE_SUCCESS, "Login successful", DeflateOutputStream.MODE_NAME);
+            } else {
+                client.sendResponse(CMD, CMD_LOGIN, RESPONSE_SUCCESS, "Login successful");
+            }
+            sendSessionToken(client, authenticatedUser);
+        } else {
+            client.sendResponse(CMD, CMD_LOGIN, RESPONSE_FAIL, "Invalid username or password");
+        }
+    }
+
+    private static void logout(ClientHandler client, MessageParser msg) {
+        POSServer.sessionTokens.revoke(client.getSessionToken());
+        client.setSessionToken(null);
+        client.setUser(null);
+        client.sendResponse(CMD, CMD_LOGOUT, RESPONSE_SUCCESS);
+    }
+
+    /**
+     * CMD[:_:]RESUME[:_:]token: restore the login a token was issued for. The user is reloaded,
+     * so a user deactivated or removed since the login is refused and loses every outstanding
+     * token. The token is used up and a fresh one follows the SUCCESS reply.
+     */
+    private static void resume(ClientHandler client, MessageParser msg) {
+        if (!client.validateArgCount(CMD_RESUME, msg, 2)) {
+            return;
+        }
+        int userId = POSServer.sessionTokens.redeem(msg.arg(1));
+        if (userId < 0) {
+            client.sendResponse(CMD, CMD_RESUME, RESPONSE_FAIL, "Invalid or expired session token");
+            return;
+        }
+        UserModel user = POSServer.databaseHandler.getUserById(userId);
+        if (user == null || !user.isActive()) {
+            POSServer.sessionTokens.revokeUser(userId);
+            client.sendResponse(CMD, CMD_RESUME, RESPONSE_FAIL, "Invalid or expired session token");
+            return;
+        }
+        client.setUser(user);
+        client.sendResponse(CMD, CMD_RESUME, RESPONSE_SUCCESS, user.getUsername());
+        sendSessionToken(client, user);
+    }
+
+    /**
+     * Issue a resume token as its own CMD[:_:]TOKEN[:_:]token[:_:]expiresAtMillis message,
+     * replacing any token the connection held before
+     */
+    private static void sendSessionToken(ClientHandler client, UserModel user) {
+        POSServer.sessionTokens.revoke(client.getSessionToken());
+        SessionTokens.Token token = POSServer.sessionTokens.issue(user);
+        client.setSessionToken(token.value());
+        client.sendResponse(CMD, CMD_TOKEN, token.value(), String.valueOf(token.expiresAt()));
+    }
+
+    private static void disconnect(ClientHandler client, MessageParser msg) {
+        client.sendResponse(CMD, CMD_DISCONNECT, RESPONSE_SUCCESS, "Disconnected");
+        client.closeConnection();
+    }
+
+    /**
+     * Switch this connection to the binary framing protocol. The acknowledgement is the last text
+     * line; the terminal must wait for it before sending its first frame.
+     */
+    private static void protocol(ClientHandler client, MessageParser msg) {
+        if (!client.validateArgCount(CMD_PROTOCOL, msg, 2)) {
+            return;
+        }
+        if (msg.argIs(1, BinaryCodec.PROTOCOL_NAME)) {
+            client.switchToBinary(CMD_PROTOCOL, RESPONSE_OK, BinaryCodec.PROTOCOL_NAME);
+        } else if (msg.argIs(1, "TEXT")) {
+            client.sendResponse(CMD, CMD_PROTOCOL, RESPONSE_OK, "TEXT");
+        } else {
+            client.sendResponse(CMD, CMD_PROTOCOL, RESPONSE_FAIL, "Unsupported protocol: " + msg.arg(1));
+        }
+    }
+}
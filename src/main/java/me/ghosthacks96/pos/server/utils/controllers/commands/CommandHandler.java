@@ -0,0 +1,13 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+
+/**
+ * Handles one protocol verb. {@code msg.arg(0)} is the subcommand, later args are its parameters.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    void handle(ClientHandler client, MessageParser msg) throws Exception;
+}
@@ -0,0 +1,175 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.metrics.CommandMetrics;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Routing table from prefix and subcommand to handler, built once at startup. Each prefix gets an
+ * open-addressed table indexed by the case-insensitive hash of the subcommand, so a lookup hashes
+ * the subcommand bytes in place and compares a single entry in the common case. Every call through
+ * {@link Command#invoke} is timed into that command's {@link CommandMetrics}.
+ *
+ * <p>Each command also carries a {@link Cost} class that decides which rate limit budget it draws
+ * from. CMD commands default to cheap and the other prefixes to expensive, since those read or
+ * write the database.
+ */
+public final class CommandRegistry {
+
+    public enum Cost {
+        CHEAP, EXPENSIVE
+    }
+
+    private static final String[] PREFIXES = {"CMD", "REC", "TRA", "DAT"};
+
+    private final Command[][] tables;
+    private final Command[] fallbacks;
+    private final List<Command> commands;
+
+    private CommandRegistry(Builder builder) {
+        tables = new Command[PREFIXES.length][];
+        fallbacks = new Command[PREFIXES.length];
+        List<Command> all = new ArrayList<>();
+        for (int p = 0; p < PREFIXES.length; p++) {
+            List<Command> entries = builder.entries.get(p);
+            int size = Integer.highestOneBit(Math.max(4, entries.size() * 4 - 1)) << 1;
+            Command[] table = new Command[size];
+            for (Command command : entries) {
+                int slot = command.hash & (size - 1);
+                while (table[slot] != null) slot = (slot + 1) & (size - 1);
+                table[slot] = command;
+                all.add(command);
+            }
+            tables[p] = table;
+            CommandHandler fallback = builder.fallbacks[p];
+            fallbacks[p] = new Command(PREFIXES[p], "*", defaultCost(p), fallback != null ? fallback : (client, msg) -> {
+            });
+            all.add(fallbacks[p]);
+        }
+        commands = Collections.unmodifiableList(all);
+    }
+
+    private static Cost defaultCost(int prefix) {
+        return prefix == MessageParser.PREFIX_CMD ? Cost.CHEAP : Cost.EXPENSIVE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The command for a parsed request, or the prefix's fallback when the subcommand is unknown
+     */
+    public Command lookup(int prefix, MessageParser msg) {
+        Command[] table = tables[prefix];
+        if (msg.argCount() > 0) {
+            int mask = table.length - 1;
+            int slot = msg.argHashUpper(0) & mask;
+            Command command;
+            while ((command = table[slot]) != null) {
+                if (msg.argIs(0, command.name)) return command;
+                slot = (slot + 1) & mask;
+            }
+        }
+        return fallbacks[prefix];
+    }
+
+    /**
+     * Every registered command including the per-prefix fallbacks, for reporting
+     */
+    public List<Command> commands() {
+        return commands;
+    }
+
+    public static final class Command {
+        private final String prefix;
+        private final String name;
+        private final int hash;
+        private final Cost cost;
+        private final CommandHandler handler;
+        private final CommandMetrics metrics;
+
+        Command(String prefix, String name, Cost cost, CommandHandler handler) {
+            this.prefix = prefix;
+            this.name = name;
+            this.hash = MessageParser.hashUpper(name);
+            this.cost = cost;
+            this.handler = handler;
+            this.metrics = new CommandMetrics(prefix + " " + name);
+        }
+
+        /**
+         * Run the handler and record its latency; a thrown exception counts as an error and is
+         * passed on to the connection loop
+         */
+        public void invoke(ClientHandler client, MessageParser msg) throws Exception {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                handler.handle(client, msg);
+                failed = false;
+            } finally {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Cost getCost() {
+            return cost;
+        }
+
+        public CommandMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    public static final class Builder {
+        private final List<List<Command>> entries = new ArrayList<>();
+        private final CommandHandler[] fallbacks = new CommandHandler[PREFIXES.length];
+
+        private Builder() {
+            for (int p = 0; p < PREFIXES.length; p++) entries.add(new ArrayList<>());
+        }
+
+        /**
+         * Register a handler for a prefix constant from {@link MessageParser} and a subcommand,
+         * with the prefix's default cost
+         */
+        public Builder register(int prefix, String command, CommandHandler handler) {
+            return register(prefix, command, defaultCost(prefix), handler);
+        }
+
+        public Builder register(int prefix, String command, Cost cost, CommandHandler handler) {
+            for (Command existing : entries.get(prefix)) {
+                if (existing.name.equalsIgnoreCase(command)) {
+                    throw new IllegalStateException("Duplicate handler for " + PREFIXES[prefix] + " " + command);
+                }
+            }
+            entries.get(prefix).add(new Command(PREFIXES[prefix], command.toUpperCase(), cost, handler));
+            return this;
+        }
+
+        /**
+         * Handler for subcommands of a prefix that have nothing registered
+         */
+        public Builder fallback(int prefix, CommandHandler handler) {
+            fallbacks[prefix] = handler;
+            return this;
+        }
+
+        public CommandRegistry build() {
+            return new CommandRegistry(this);
+        }
+    }
+}
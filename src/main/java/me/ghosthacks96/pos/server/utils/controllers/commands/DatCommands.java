@@ -0,0 +1,421 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.controllers.DatabaseHandler;
+import me.ghosthacks96.pos.server.utils.models.UserModel;
+import me.ghosthacks96.pos.server.utils.net.HashedWheelTimer;
+import me.ghosthacks96.pos.server.utils.net.OutboundQueue;
+import me.ghosthacks96.pos.server.utils.net.RequestWorkers;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static me.ghosthacks96.pos.server.utils.controllers.ClientHandler.*;
+
+/**
+ * Read-only lookups: DAT[:_:]PROD_LIST, PROD_DELTA, U_PERMS, U_DATA and TRANSACTION
+ */
+public final class DatCommands {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatCommands.class);
+    private static final String TOO_LARGE = "Catalog too large for one response; use PROD_LIST STREAM or a cursor";
+    // Largest whole-catalog response, in bytes, when prod-list-max-bytes is not set
+    private static final int DEFAULT_MAX_RESPONSE = 16 * 1024 * 1024;
+
+    private DatCommands() {
+    }
+
+    public static void register(CommandRegistry.Builder builder) {
+        builder.register(MessageParser.PREFIX_DAT, "PROD_LIST", DatCommands::productList)
+               .register(MessageParser.PREFIX_DAT, "PROD_DELTA", DatCommands::productDelta)
+               .register(MessageParser.PREFIX_DAT, "U_PERMS", DatCommands::userPermissions)
+               .register(MessageParser.PREFIX_DAT, "U_DATA", DatCommands::userData)
+               .register(MessageParser.PREFIX_DAT, "TRANSACTION", DatCommands::transaction)
+               .fallback(MessageParser.PREFIX_DAT, (client, msg) -> client.sendResponse(DAT,
+                       msg.argCount() > 0 ? msg.arg(0) : "UNKNOWN", RESPONSE_FAIL, "Unknown DAT command"));
+    }
+
+    /**
+     * DAT[:_:]PROD_LIST                        whole catalog in one response, up to
+     *                                          prod-list-max-bytes; FAIL above that
+     * DAT[:_:]PROD_LIST[:_:]afterId[:_:]limit  one page in id order, ending with the next cursor or END
+     * DAT[:_:]PROD_LIST[:_:]STREAM[:_:]chunk   PROD_CHUNK responses followed by PROD_END
+     *
+     * <p>Rows are read before the response is started, so the session's write lock (and with it
+     * heartbeats and pushes to the terminal) never waits on SQLite, then encoded into the output
+     * buffer: one '|'/';' joined part for text terminals, five fields per product for binary ones.
+     * Terminals that only know the plain form cannot take the catalog in pieces, so the whole
+     * response is queued as one chunk exempt from the {@code outbound-max-bytes} limits. Only a
+     * catalog past the much larger {@code prod-list-max-bytes} is refused, with a pointer to the
+     * streamed and paged forms.
+     */
+    private static void productList(ClientHandler client, MessageParser msg) {
+        if (msg.argCount() <= 1) {
+            Rows rows = new Rows(responseBudget());
+            POSServer.databaseHandler.forEachProduct(0, 0, rows);
+            if (rows.overBudget) {
+                client.sendResponse(DAT, "PROD_LIST", RESPONSE_FAIL, TOO_LARGE);
+                return;
+            }
+            ResponseEncoder out = client.beginResponse(DAT, "PROD_LIST");
+            if (out == null) return;
+            try {
+                rows.writeTo(new RowWriter(out, 0));
+            } finally {
+                client.endOversizedResponse();
+            }
+            return;
+        }
+
+        boolean stream = msg.argIs(1, "STREAM");
+        int first;
+        int size;
+        try {
+            first = stream ? 0 : Integer.parseInt(msg.arg(1));
+            int defaultSize = stream ? Config.getInt("prod-chunk-size", 200) : Config.getInt("prod-page-size", 100);
+            size = msg.argCount() > 2 ? Integer.parseInt(msg.arg(2)) : defaultSize;
+        } catch (NumberFormatException e) {
+            client.sendResponse(DAT, "PROD_LIST", RESPONSE_FAIL, "Invalid cursor or limit");
+            return;
+        }
+        size = Math.max(1, Math.min(size, Config.getInt("prod-page-max", 1000)));
+
+        if (stream) {
+            streamProducts(client, size);
+        } else {
+            productPage(client, first, size);
+        }
+    }
+
+    private static void productPage(ClientHandler client, int afterId, int limit) {
+        Rows page = new Rows(0);
+        // One row past the page tells us whether there is a next page
+        boolean more = POSServer.databaseHandler.forEachProduct(afterId, limit + 1, page) > limit;
+        ResponseEncoder out = client.beginResponse(DAT, "PROD_LIST");
+        if (out == null) return;
+        try {
+            RowWriter rows = new RowWriter(out, limit);
+            page.writeTo(rows);
+            if (rows.written == 0 && !out.isBinary()) out.part("");
+            out.part(more ? String.valueOf(rows.lastId) : "END");
+        } finally {
+            client.endResponse();
+        }
+    }
+
+    /**
+     * Send the catalog as a series of chunks, each read with its own keyset query so no read
+     * transaction stays open while a slow terminal catches up. After each chunk the stream waits
+     * for the terminal's outbound queue to drain, so memory stays at about one chunk; it waits
+     * without a thread, resuming on a request worker once the queue has room.
+     */
+    private static void streamProducts(ClientHandler client, int chunkSize) {
+        new ProductStream(client, chunkSize).next();
+    }
+
+    private static final class ProductStream {
+        private final ClientHandler client;
+        private final ClientHandler.DeferredReply reply;
+        private final int chunkSize;
+        private int lastId = 0;
+        private int total = 0;
+
+        ProductStream(ClientHandler client, int chunkSize) {
+            this.client = client;
+            this.reply = client.deferReply();
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Send the next chunk, then finish or wait for the terminal to read it
+         */
+        void next() {
+            try {
+                // A closed session (disconnect, drain) needs no warning
+                if (!client.isConnected()) {
+                    reply.abandon();
+                    return;
+                }
+                Rows chunk = new Rows(0);
+                POSServer.databaseHandler.forEachProduct(lastId, chunkSize, chunk);
+                if (chunk.isEmpty()) {
+                    finish();
+                    return;
+                }
+                ResponseEncoder out = reply.beginResponse(DAT, "PROD_CHUNK");
+                if (out == null) {
+                    reply.abandon();
+                    return;
+                }
+                RowWriter rows = new RowWriter(out, chunkSize);
+                try {
+                    chunk.writeTo(rows);
+                } finally {
+                    client.endResponse();
+                }
+                total += rows.written;
+                lastId = rows.lastId;
+                client.flush();
+                if (rows.written < chunkSize) {
+                    finish();
+                    return;
+                }
+                awaitWritable();
+            } catch (RuntimeException e) {
+                reply.abandon();
+                logger.error("Product stream to {} failed: {}", client.getIp(), e.getMessage(), e);
+            }
+        }
+
+        private void awaitWritable() {
+            AtomicBoolean resumed = new AtomicBoolean();
+            HashedWheelTimer.Timeout stall = client.schedule(() -> {
+                if (!resumed.compareAndSet(false, true)) return;
+                reply.abandon();
+                if (client.isConnected()) {
+                    POSServer.console.printWarning("Product stream to " + client.getIp() + " stopped after "
+                            + total + " rows: terminal is not reading");
+                }
+            }, Config.getInt("stream-stall-ms", 30000));
+            client.getOutboundQueue().whenWritable(() -> {
+                if (!resumed.compareAndSet(false, true)) return;
+                stall.cancel();
+                RequestWorkers.submit(this::next);
+            });
+        }
+
+        private void finish() {
+            reply.send(DAT, "PROD_END", String.valueOf(total), String.valueOf(lastId));
+        }
+    }
+
+    /**
+     * DAT[:_:]PROD_DELTA[:_:]version: what changed in the catalog since the terminal's version.
+     * Text: the new version, changed rows joined as in PROD_LIST, then deleted ids joined by ';'.
+     * Binary: the new version, the number of deleted ids, the ids, then five fields per changed
+     * product. Version 0, or a version newer than the server's, is a full sync without tombstones.
+     * Like the plain PROD_LIST it is queued whole past the outbound budget; a delta past
+     * {@code prod-list-max-bytes} is refused with the current version, so the terminal can reload
+     * with PROD_LIST STREAM and ask for deltas from there.
+     */
+    private static void productDelta(ClientHandler client, MessageParser msg) {
+        if (msg.argCount() <= 1) {
+            client.sendResponse(DAT, "PROD_DELTA", RESPONSE_FAIL, "Version required");
+            return;
+        }
+        long since;
+        try {
+            since = Long.parseLong(msg.arg(1));
+        } catch (NumberFormatException e) {
+            since = -1;
+        }
+        if (since < 0) {
+            client.sendResponse(DAT, "PROD_DELTA", RESPONSE_FAIL, "Invalid version");
+            return;
+        }
+
+        DatabaseHandler db = POSServer.databaseHandler;
+        // Changes made after this point are left for the next delta
+        long version = db.getCatalogVersion();
+        if (since > version) since = 0;
+        List<Integer> deleted = since > 0 ? db.getDeletedProductIds(since, version) : List.of();
+
+        Rows changed = new Rows(responseBudget());
+        db.forEachProductChange(since, version, changed);
+        if (changed.overBudget) {
+            client.sendResponse(DAT, "PROD_DELTA", RESPONSE_FAIL, TOO_LARGE, String.valueOf(version));
+            return;
+        }
+
+        ResponseEncoder out = client.beginResponse(DAT, "PROD_DELTA");
+        if (out == null) return;
+        try {
+            out.part(version);
+            if (out.isBinary()) {
+                out.part(deleted.size());
+                for (int id : deleted) out.part(id);
+                changed.writeTo(new RowWriter(out, 0));
+            } else {
+                RowWriter rows = new RowWriter(out, 0);
+                changed.writeTo(rows);
+                if (rows.written == 0) out.part("");
+                out.part("");
+                for (int i = 0; i < deleted.size(); i++) {
+                    if (i > 0) out.raw(';');
+                    out.raw(deleted.get(i));
+                }
+            }
+        } finally {
+            client.endOversizedResponse();
+        }
+    }
+
+    /**
+     * The PROD_LIST row encoding on its own, for the protocol benchmarks: a visitor that appends
+     * each product to the response {@code out} has begun
+     */
+    public static DatabaseHandler.ProductVisitor productRows(ResponseEncoder out, int limit) {
+        return new RowWriter(out, limit);
+    }
+
+    /**
+     * Bytes a single whole-catalog response may take
+     */
+    private static long responseBudget() {
+        return Config.getInt("prod-list-max-bytes", DEFAULT_MAX_RESPONSE);
+    }
+
+    /**
+     * Product rows read ahead of encoding, so no query runs while a response holds the write lock.
+     * With a byte budget, reading stops once the rows would no longer fit it.
+     */
+    private static final class Rows implements DatabaseHandler.ProductVisitor {
+        private record Row(int id, String name, String description, BigDecimal price, int stock) {
+        }
+
+        // Separators, id, price and stock of a row, roughly as encoded
+        private static final int ROW_OVERHEAD = 24;
+
+        private final List<Row> rows = new ArrayList<>();
+        private final long maxBytes;
+        private long bytes = 0;
+        boolean overBudget = false;
+
+        Rows(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public boolean visit(int id, String name, String description, BigDecimal price, int stock) {
+            if (maxBytes > 0) {
+                bytes += ROW_OVERHEAD + (name != null ? ResponseEncoder.utf8Length(name) : 0)
+                        + (description != null ? ResponseEncoder.utf8Length(description) : 0);
+                if (bytes > maxBytes) {
+                    overBudget = true;
+                    rows.clear();
+                    return false;
+                }
+            }
+            rows.add(new Row(id, name, description, price, stock));
+            return true;
+        }
+
+        boolean isEmpty() {
+            return rows.isEmpty();
+        }
+
+        void writeTo(DatabaseHandler.ProductVisitor visitor) {
+            for (Row row : rows) {
+                if (!visitor.visit(row.id(), row.name(), row.description(), row.price(), row.stock())) break;
+            }
+        }
+    }
+
+    /**
+     * Encodes visited product rows into the current response, up to {@code limit} rows (0 for all)
+     */
+    private static final class RowWriter implements DatabaseHandler.ProductVisitor {
+        private final ResponseEncoder out;
+        private final int limit;
+        int written = 0;
+        int lastId = 0;
+
+        RowWriter(ResponseEncoder out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean visit(int id, String name, String description, BigDecimal price, int stock) {
+            if (limit > 0 && written == limit) return false;
+            if (out.isBinary()) {
+                out.part(id).part(name).part(description).part(price).part(stock);
+            } else {
+                if (written == 0) {
+                    out.part("");
+                } else {
+                    out.raw(';');
+                }
+                out.raw(id).raw('|')
+                   .raw(name).raw('|')
+                   .raw(description).raw('|')
+                   .raw(price).raw('|')
+                   .raw(stock);
+            }
+            written++;
+            lastId = id;
+            return true;
+        }
+    }
+
+    private static void userPermissions(ClientHandler client, MessageParser msg) {
+        if (msg.argCount() <= 1) {
+            client.sendResponse(DAT, "U_PERMS", RESPONSE_FAIL, "Username required");
+            return;
+        }
+        String username = msg.arg(1);
+        UserModel user = findUser(username);
+        if (user != null) {
+            StringBuilder sb = new StringBuilder();
+            for (var perm : user.getPermissions()) {
+                sb.append(perm).append("|");
+            }
+            if (!sb.isEmpty()) sb.setLength(sb.length() - 1);
+            client.sendResponse(DAT, "U_PERMS", username, sb.toString());
+        } else {
+            client.sendResponse(DAT, "U_PERMS", RESPONSE_FAIL, "User not found");
+        }
+    }
+
+    private static void userData(ClientHandler client, MessageParser msg) {
+        if (msg.argCount() <= 1) {
+            client.sendResponse(DAT, "U_DATA", RESPONSE_FAIL, "Username required");
+            return;
+        }
+        String username = msg.arg(1);
+        UserModel user = findUser(username);
+        if (user != null) {
+            String data = user.getUsername() + "|" + user.isAdmin() + "|" + user.isActive() + "|" + user.getLastLogin();
+            client.sendResponse(DAT, "U_DATA", username, data);
+        } else {
+            client.sendResponse(DAT, "U_DATA", RESPONSE_FAIL, "User not found");
+        }
+    }
+
+    private static void transaction(ClientHandler client, MessageParser msg) {
+        if (msg.argCount() <= 1) {
+            client.sendResponse(DAT, "TRANSACTION", RESPONSE_FAIL, "Transaction ID required");
+            return;
+        }
+        String transactionId = msg.arg(1);
+        var txn = POSServer.databaseHandler.getTransactionById(transactionId);
+        if (txn.isEmpty()) {
+            client.sendResponse(DAT, "TRANSACTION", RESPONSE_FAIL, "Transaction not found");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (var entry : txn.entrySet()) {
+            sb.append(entry.getKey()).append("=").append(entry.getValue()).append("|");
+        }
+        if (!sb.isEmpty()) sb.setLength(sb.length() - 1);
+        client.sendResponse(DAT, "TRANSACTION", transactionId, sb.toString());
+    }
+
+    private static UserModel findUser(String username) {
+        DatabaseHandler db = POSServer.databaseHandler;
+        for (var user : db.getAllUsers()) {
+            if (user.getUsername().equalsIgnoreCase(username)) {
+                return user;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,52 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+
+import static me.ghosthacks96.pos.server.utils.controllers.ClientHandler.*;
+
+/**
+ * Receipts: REC[:_:]RECEIPT and REC[:_:]REPRINT, rendered by the server from the stored sale so
+ * every terminal prints the same layout
+ */
+public final class RecCommands {
+
+    private static final String REC_RECEIPT = "RECEIPT";
+    private static final String REC_REPRINT = "REPRINT";
+
+    private RecCommands() {
+    }
+
+    public static void register(CommandRegistry.Builder builder) {
+        builder.register(MessageParser.PREFIX_REC, REC_RECEIPT, (client, msg) -> receipt(client, msg, REC_RECEIPT, false))
+               .register(MessageParser.PREFIX_REC, REC_REPRINT, (client, msg) -> receipt(client, msg, REC_REPRINT, true))
+               .fallback(MessageParser.PREFIX_REC, (client, msg) -> client.sendResponse(REC,
+                       msg.argCount() > 0 ? msg.arg(0) : "UNKNOWN", RESPONSE_FAIL, "Unknown REC command"));
+    }
+
+    /**
+     * REC[:_:]RECEIPT[:_:]transactionId, or REPRINT for a copy marked as one. Replies with the
+     * transaction id followed by one part per printed line.
+     */
+    private static void receipt(ClientHandler client, MessageParser msg, String command, boolean reprint) {
+        if (client.getUser() == null) {
+            client.sendResponse(REC, command, RESPONSE_FAIL, "Login required");
+            return;
+        }
+        if (msg.argCount() <= 1 || msg.arg(1).isEmpty()) {
+            client.sendResponse(REC, command, RESPONSE_FAIL, "Transaction ID required");
+            return;
+        }
+        String transactionId = msg.arg(1);
+        String[] lines = POSServer.receipts.receipt(transactionId, reprint);
+        if (lines == null) {
+            client.sendResponse(REC, command, RESPONSE_FAIL, "Transaction not found");
+            return;
+        }
+        String[] parts = new String[lines.length + 1];
+        parts[0] = transactionId;
+        System.arraycopy(lines, 0, parts, 1, lines.length);
+        client.sendResponse(REC, command, parts);
+    }
+}
@@ -0,0 +1,295 @@
+package me.ghosthacks96.pos.server.utils.controllers.commands;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.controllers.TransactionWriter;
+import me.ghosthacks96.pos.server.utils.models.PaymentMethod;
+import me.ghosthacks96.pos.server.utils.models.TransactionItem;
+import me.ghosthacks96.pos.server.utils.models.TransactionModel;
+import me.ghosthacks96.pos.server.utils.models.TransactionStatus;
+import me.ghosthacks96.pos.server.utils.net.RequestWorkers;
+import me.ghosthacks96.pos.server.utils.protocol.MessageParser;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static me.ghosthacks96.pos.server.utils.controllers.ClientHandler.*;
+
+/**
+ * Sales: TRA[:_:]SUBMIT for one sale and TRA[:_:]BATCH for sales rung up offline. Sales are stored
+ * by {@link TransactionWriter}, and a terminal's SUCCESS is only sent once its sales have been
+ * committed. The reply is sent from the commit's callback, so no thread waits on the database.
+ */
+public final class TraCommands {
+
+    private static final String TRA_SUBMIT = "SUBMIT";
+    private static final String TRA_BATCH = "BATCH";
+    // Fields after the subcommand: id, customer, payment, subtotal, tax, discount, total, items
+    private static final int SALE_FIELDS = 8;
+    // ...then the time of sale, optional for SUBMIT and required in BATCH records
+    private static final int SALE_FIELDS_TIMED = SALE_FIELDS + 1;
+    // How far ahead of the server's clock a terminal's sale time may be
+    private static final long CLOCK_SKEW_MINUTES = 5;
+    // Suggested wait before resending a sale whose commit did not finish in time
+    private static final long ACK_RETRY_AFTER_MS = 1000;
+    // Below this many records validating on the calling thread is quicker than forking
+    private static final int PARALLEL_VALIDATION_MIN = 64;
+
+    private TraCommands() {
+    }
+
+    public static void register(CommandRegistry.Builder builder) {
+        builder.register(MessageParser.PREFIX_TRA, TRA_SUBMIT, TraCommands::submit)
+               .register(MessageParser.PREFIX_TRA, TRA_BATCH, TraCommands::batch)
+               .fallback(MessageParser.PREFIX_TRA, (client, msg) -> client.sendResponse(TRA,
+                       msg.argCount() > 0 ? msg.arg(0) : "UNKNOWN", RESPONSE_FAIL, "Unknown TRA command"));
+    }
+
+    /**
+     * TRA[:_:]SUBMIT[:_:]transactionId[:_:]customerId[:_:]paymentMethod[:_:]subtotal[:_:]tax
+     * [:_:]discount[:_:]total[:_:]items[[:_:]soldAt], items being
+     * {@code productId|quantity|unitPrice[|discount]} joined by ';' and soldAt an ISO-8601 time
+     * with offset, such as {@code 2026-10-16T09:30:00Z}; without it the sale is stamped with the
+     * server's time. The customer may be empty; the employee is the logged-in user. Replies
+     * SUCCESS or FAIL with the transaction id, FAIL carrying the reason.
+     */
+    private static void submit(ClientHandler client, MessageParser msg) {
+        if (client.getUser() == null) {
+            client.sendResponse(TRA, TRA_SUBMIT, RESPONSE_FAIL, "Login required");
+            return;
+        }
+        int fieldCount = msg.argCount() - 1;
+        if (fieldCount != SALE_FIELDS && fieldCount != SALE_FIELDS_TIMED) {
+            client.sendResponse(TRA, TRA_SUBMIT, RESPONSE_FAIL, "Invalid argument count for " + TRA_SUBMIT
+                    + ". Expected: " + (SALE_FIELDS + 1) + " or " + (SALE_FIELDS_TIMED + 1) + ", Got: " + msg.argCount());
+            return;
+        }
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) fields[i] = msg.arg(i + 1);
+
+        TransactionModel sale;
+        try {
+            sale = parseSale(fields, client.getUsername());
+        } catch (IllegalArgumentException e) {
+            client.sendResponse(TRA, TRA_SUBMIT, RESPONSE_FAIL, fields[0], e.getMessage());
+            return;
+        }
+
+        ClientHandler.DeferredReply reply = client.deferReply();
+        POSServer.transactionWriter.submit(sale)
+                .orTimeout(Config.getInt("tra-ack-timeout-ms", 10000), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((result, error) -> {
+                    if (timedOut(error)) {
+                        // Still queued or committing; the terminal keeps the sale and sends it again
+                        reply.sendRetryLater(TRA, TRA_SUBMIT, "Transaction not yet committed", ACK_RETRY_AFTER_MS);
+                    } else if (error != null) {
+                        reply.send(TRA, TRA_SUBMIT, RESPONSE_FAIL, sale.transactionId(), "Database error");
+                    } else if (result.stored()) {
+                        reply.send(TRA, TRA_SUBMIT, RESPONSE_SUCCESS, result.transactionId());
+                    } else {
+                        reply.send(TRA, TRA_SUBMIT, RESPONSE_FAIL, result.transactionId(), result.error());
+                    }
+                }, RequestWorkers::submit);
+    }
+
+    /**
+     * TRA[:_:]BATCH[:_:]record[:_:]record...: the backlog of a terminal that was offline. A record
+     * is the SUBMIT fields joined by ',', the time of sale required and last, since the upload
+     * can come hours after the sales were rung up. Records are validated in parallel and the
+     * valid ones stored in a single commit. Replies SUCCESS, the stored and failed counts, then a
+     * result per record in the order sent, {@code id|OK} or {@code id|FAIL|reason}, joined by ';'.
+     */
+    private static void batch(ClientHandler client, MessageParser msg) {
+        if (client.getUser() == null) {
+            client.sendResponse(TRA, TRA_BATCH, RESPONSE_FAIL, "Login required");
+            return;
+        }
+        int count = msg.argCount() - 1;
+        if (count == 0) {
+            client.sendResponse(TRA, TRA_BATCH, RESPONSE_FAIL, "No transactions");
+            return;
+        }
+        // The parser belongs to this connection, so take the records out before forking
+        String[] records = new String[count];
+        for (int i = 0; i < count; i++) records[i] = msg.arg(i + 1);
+        String employeeId = client.getUsername();
+
+        TransactionModel[] sales = new TransactionModel[count];
+        String[] errors = new String[count];
+        IntStream indexes = IntStream.range(0, count);
+        (count >= PARALLEL_VALIDATION_MIN ? indexes.parallel() : indexes).forEach(i -> {
+            String[] fields = records[i].split(",", -1);
+            try {
+                if (fields.length != SALE_FIELDS_TIMED) {
+                    throw new IllegalArgumentException("Expected " + SALE_FIELDS_TIMED + " fields, got " + fields.length);
+                }
+                sales[i] = parseSale(fields, employeeId);
+            } catch (IllegalArgumentException e) {
+                errors[i] = e.getMessage();
+            }
+        });
+
+        List<TransactionModel> valid = new ArrayList<>(count);
+        for (TransactionModel sale : sales) {
+            if (sale != null) valid.add(sale);
+        }
+        if (valid.isEmpty()) {
+            sendBatchResults(client.deferReply(), records, sales, errors, List.of());
+            return;
+        }
+        ClientHandler.DeferredReply reply = client.deferReply();
+        POSServer.transactionWriter.submitAll(valid)
+                .orTimeout(Config.getInt("tra-ack-timeout-ms", 10000), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((results, error) -> {
+                    if (timedOut(error)) {
+                        // Sent again, the upload waits on these same commits through the dedup window
+                        reply.sendRetryLater(TRA, TRA_BATCH, "Transactions not yet committed", ACK_RETRY_AFTER_MS);
+                    } else if (error != null) {
+                        reply.send(TRA, TRA_BATCH, RESPONSE_FAIL, "Database error");
+                    } else {
+                        sendBatchResults(reply, records, sales, errors, results);
+                    }
+                }, RequestWorkers::submit);
+    }
+
+    private static void sendBatchResults(ClientHandler.DeferredReply reply, String[] records, TransactionModel[] sales,
+                                         String[] errors, List<TransactionWriter.Result> results) {
+        int count = records.length;
+        StringBuilder sb = new StringBuilder(count * 16);
+        int stored = 0;
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(';');
+            if (sales[i] == null) {
+                int comma = records[i].indexOf(',');
+                sb.append(comma < 0 ? records[i] : records[i].substring(0, comma))
+                  .append("|FAIL|").append(listSafe(errors[i]));
+                continue;
+            }
+            TransactionWriter.Result result = results.get(next++);
+            sb.append(result.transactionId());
+            if (result.stored()) {
+                stored++;
+                sb.append("|OK");
+            } else {
+                sb.append("|FAIL|").append(listSafe(result.error()));
+            }
+        }
+        reply.send(TRA, TRA_BATCH, RESPONSE_SUCCESS, String.valueOf(stored),
+                String.valueOf(count - stored), sb.toString());
+    }
+
+    private static boolean timedOut(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        return error instanceof TimeoutException;
+    }
+
+    /**
+     * Keep a reason from breaking the '|'/';' result list
+     */
+    private static String listSafe(String reason) {
+        return reason.replace('|', ' ').replace(';', ' ');
+    }
+
+    /**
+     * Build a completed sale from its wire fields, checking that the line totals add up to the
+     * subtotal and that subtotal + tax - discount is the total. The sale is stamped with the time
+     * of sale when the fields carry one and with the server's time otherwise. Throws
+     * IllegalArgumentException with a message for the terminal when a field is malformed or the
+     * sums do not match.
+     */
+    static TransactionModel parseSale(String[] fields, String employeeId) {
+        String transactionId = fields[0];
+        String customerId = fields[1].isEmpty() ? null : fields[1];
+        PaymentMethod payment;
+        try {
+            payment = PaymentMethod.valueOf(fields[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown payment method: " + fields[2]);
+        }
+        BigDecimal subtotal = amount(fields[3], "subtotal");
+        BigDecimal tax = amount(fields[4], "tax");
+        BigDecimal discount = amount(fields[5], "discount");
+        BigDecimal total = amount(fields[6], "total");
+        List<TransactionItem> items = parseItems(fields[7]);
+        LocalDateTime soldAt = fields.length > SALE_FIELDS ? soldAt(fields[SALE_FIELDS])
+                : LocalDateTime.now(ZoneOffset.UTC);
+
+        BigDecimal lines = BigDecimal.ZERO;
+        for (TransactionItem item : items) lines = lines.add(item.lineTotal());
+        if (lines.compareTo(subtotal) != 0) {
+            throw new IllegalArgumentException("Subtotal " + subtotal + " does not match items " + lines);
+        }
+        if (subtotal.add(tax).subtract(discount).compareTo(total) != 0) {
+            throw new IllegalArgumentException("Total " + total + " does not match subtotal + tax - discount");
+        }
+        return new TransactionModel(transactionId, customerId, employeeId, soldAt, items,
+                subtotal, tax, discount, total, payment, TransactionStatus.COMPLETED);
+    }
+
+    private static List<TransactionItem> parseItems(String field) {
+        List<TransactionItem> items = new ArrayList<>();
+        for (String line : field.split(";")) {
+            if (line.isBlank()) continue;
+            String[] parts = line.split("\\|", -1);
+            if (parts.length != 3 && parts.length != 4) {
+                throw new IllegalArgumentException("Invalid item: " + line);
+            }
+            int quantity;
+            try {
+                quantity = Integer.parseInt(parts[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid quantity: " + parts[1]);
+            }
+            BigDecimal unitPrice = amount(parts[2], "unit price");
+            BigDecimal discount = parts.length == 4 ? amount(parts[3], "item discount") : BigDecimal.ZERO;
+            BigDecimal lineTotal = unitPrice.multiply(BigDecimal.valueOf(quantity)).subtract(discount);
+            // The record checks id, quantity and prices
+            items.add(new TransactionItem(parts[0].trim(), null, null, quantity, unitPrice, lineTotal, discount));
+        }
+        if (items.isEmpty()) throw new IllegalArgumentException("Transaction must have at least one item");
+        return items;
+    }
+
+    /**
+     * A terminal's time of sale in UTC, as sales are stored. Refused if it is ahead of the server
+     * by more than clock skew, or older than {@code tra-max-sale-age-days}.
+     */
+    private static LocalDateTime soldAt(String value) {
+        OffsetDateTime time;
+        try {
+            time = OffsetDateTime.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid sale time: " + value);
+        }
+        LocalDateTime utc = time.withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime();
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        if (utc.isAfter(now.plusMinutes(CLOCK_SKEW_MINUTES))) {
+            throw new IllegalArgumentException("Sale time is in the future: " + value);
+        }
+        if (utc.isBefore(now.minusDays(Config.getInt("tra-max-sale-age-days", 30)))) {
+            throw new IllegalArgumentException("Sale time is too old: " + value);
+        }
+        return utc;
+    }
+
+    private static BigDecimal amount(String value, String name) {
+        try {
+            BigDecimal amount = new BigDecimal(value.trim());
+            if (amount.signum() < 0) throw new IllegalArgumentException("Negative " + name + ": " + value);
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+}
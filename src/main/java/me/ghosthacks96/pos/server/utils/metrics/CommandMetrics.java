@@ -0,0 +1,58 @@
+package me.ghosthacks96.pos.server.utils.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call and error counters plus a latency histogram for one protocol command
+ */
+public final class CommandMetrics {
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public CommandMetrics(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos, boolean error) {
+        calls.increment();
+        if (error) errors.increment();
+        latency.record(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Snapshot for the web API, latencies in microseconds
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("command", name);
+        map.put("calls", getCalls());
+        map.put("errors", getErrors());
+        map.put("totalMs", latency.getTotalNanos() / 1_000_000);
+        map.put("meanUs", latency.getMeanNanos() / 1_000);
+        map.put("p50Us", latency.percentileNanos(0.50) / 1_000);
+        map.put("p99Us", latency.percentileNanos(0.99) / 1_000);
+        map.put("maxUs", latency.getMaxNanos() / 1_000);
+        return map;
+    }
+}
@@ -0,0 +1,10 @@
+package me.ghosthacks96.pos.server.utils.models;
+
+public enum PaymentMethod {
+    CASH,
+    CREDIT_CARD,
+    DEBIT_CARD,
+    MOBILE_PAYMENT,
+    CHECK,
+    GIFT_CARD
+}
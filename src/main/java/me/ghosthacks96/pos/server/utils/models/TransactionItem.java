@@ -0,0 +1,42 @@
+package me.ghosthacks96.pos.server.utils.models;
+
+import java.math.BigDecimal;
+
+// Supporting record for transaction items
+public record TransactionItem(
+        String productId,
+        String productName,
+        String productCategory,
+        int quantity,
+        BigDecimal unitPrice,
+        BigDecimal lineTotal,
+        BigDecimal discountAmount
+) {
+    public TransactionItem {
+        if (productId == null || productId.isBlank()) {
+            throw new IllegalArgumentException("Product ID cannot be null or blank");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (unitPrice == null || unitPrice.compareTo(BigDecimal.ZERO) < 0) {
+            throw new IllegalArgumentException("Unit price cannot be negative");
+        }
+        if (lineTotal == null || lineTotal.compareTo(BigDecimal.ZERO) < 0) {
+            throw new IllegalArgumentException("Line total cannot be negative");
+        }
+        if (discountAmount == null) {
+            discountAmount = BigDecimal.ZERO;
+        }
+    }
+
+    // Calculate line total before discount
+    public BigDecimal getLineSubtotal() {
+        return unitPrice.multiply(BigDecimal.valueOf(quantity));
+    }
+
+    // Check if item has discount applied
+    public boolean hasDiscount() {
+        return discountAmount.compareTo(BigDecimal.ZERO) > 0;
+    }
+}
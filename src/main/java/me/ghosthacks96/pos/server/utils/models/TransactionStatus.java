@@ -0,0 +1,9 @@
+package me.ghosthacks96.pos.server.utils.models;
+
+public enum TransactionStatus {
+    PENDING,
+    COMPLETED,
+    CANCELLED,
+    REFUNDED,
+    PARTIALLY_REFUNDED
+}
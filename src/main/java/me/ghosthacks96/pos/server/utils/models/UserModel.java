@@ -8,6 +8,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 public class UserModel {
+    private int id;
     private String username;
     private String password;
     private boolean isAdmin;
@@ -26,6 +27,14 @@ public class UserModel {
     }
 
     // Getters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -0,0 +1,164 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.models.UserModel;
+import me.ghosthacks96.pos.server.utils.protocol.ResponseEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Server-initiated updates to every terminal that should see them. An event is encoded once per
+ * protocol and the same arrays are handed to each session's outbound queue, so the cost of an
+ * event does not grow with message size times terminal count.
+ *
+ * <p>Fan-out runs on {@code broadcast-threads} lanes. A session always lands on the same lane
+ * (session id modulo lane count), so it receives events in the order they were published while
+ * different sessions are filled in parallel.
+ */
+public final class Broadcaster {
+
+    /** Catalog pushes are for terminals whose user may see inventory */
+    public static final String INVENTORY_VIEW = "INVENTORY_VIEW";
+
+    /** What changed about a product; sent as the first field of a PROD_PUSH */
+    public enum ProductChange {
+        ADDED, UPDATED, PRICE, STOCK, REMOVED
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(Broadcaster.class);
+
+    private volatile ExecutorService[] lanes;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Push a product's current state. Every event carries the full row and shares the product's
+     * coalesce key, so a terminal that falls behind only ever gets the newest state.
+     */
+    public void productChanged(ProductChange change, Map<String, Object> product) {
+        Object id = product.get("id");
+        if (change == ProductChange.REMOVED) {
+            productRemoved(id);
+            return;
+        }
+        byte[][] encoded = encode(out -> out.begin("DAT", "PROD_PUSH")
+                .part(change.name())
+                .part(id)
+                .part(product.get("name"))
+                .part(product.get("description"))
+                .part(product.get("price"))
+                .part(product.get("stock"))
+                .end());
+        publish(encoded[0], encoded[1], "product:" + id, Broadcaster::canViewInventory);
+    }
+
+    public void productRemoved(Object id) {
+        byte[][] encoded = encode(out -> out.begin("DAT", "PROD_PUSH")
+                .part(ProductChange.REMOVED.name())
+                .part(id)
+                .end());
+        publish(encoded[0], encoded[1], "product:" + id, Broadcaster::canViewInventory);
+    }
+
+    /**
+     * Queue pre-encoded messages for every live session the filter accepts. Returns immediately;
+     * delivery happens on the broadcast lanes.
+     */
+    public void publish(byte[] textMessage, byte[] binaryMessage, String coalesceKey, Predicate<ClientHandler> filter) {
+        events.increment();
+        ExecutorService[] executors = lanes();
+        int laneCount = executors.length;
+        for (int i = 0; i < laneCount; i++) {
+            int lane = i;
+            executors[i].execute(() -> {
+                for (ClientHandler client : POSServer.sessions.all()) {
+                    if (Math.floorMod(client.getSessionId(), laneCount) != lane) continue;
+                    if (!filter.test(client)) {
+                        filtered.increment();
+                    } else if (client.push(textMessage, binaryMessage, coalesceKey)) {
+                        delivered.increment();
+                    } else {
+                        dropped.increment();
+                    }
+                }
+            });
+        }
+    }
+
+    private static boolean canViewInventory(ClientHandler client) {
+        UserModel user = client.getUser();
+        return user != null && user.hasPermissionById(INVENTORY_VIEW);
+    }
+
+    private interface Message {
+        void write(ResponseEncoder out);
+    }
+
+    /**
+     * Encode a message in both protocols: [0] is text, [1] is binary
+     */
+    private static byte[][] encode(Message message) {
+        byte[][] encoded = new byte[2][];
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            ResponseEncoder out = new ResponseEncoder(bytes);
+            out.setBinary(i == 1);
+            message.write(out);
+            try {
+                out.flush();
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+                throw new IllegalStateException(e);
+            }
+            encoded[i] = bytes.toByteArray();
+        }
+        return encoded;
+    }
+
+    private ExecutorService[] lanes() {
+        ExecutorService[] executors = lanes;
+        if (executors == null) {
+            synchronized (this) {
+                executors = lanes;
+                if (executors == null) {
+                    int count = Math.max(1, Config.getInt("broadcast-threads", 2));
+                    executors = new ExecutorService[count];
+                    for (int i = 0; i < count; i++) {
+                        String name = "POS-Broadcast-" + (i + 1);
+                        executors[i] = Executors.newSingleThreadExecutor(r -> {
+                            Thread thread = new Thread(r, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                    }
+                    lanes = executors;
+                    logger.info("Broadcast fan-out using {} lanes", count);
+                }
+            }
+        }
+        return executors;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("events", events.sum());
+        stats.put("delivered", delivered.sum());
+        stats.put("filtered", filtered.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+}
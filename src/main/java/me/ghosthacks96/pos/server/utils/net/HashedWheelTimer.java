@@ -0,0 +1,168 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One thread that runs every per-session deadline (heartbeats, read and idle timeouts, close
+ * drains) no matter how many terminals are connected. Timeouts are hashed into a ring of
+ * buckets by deadline; each tick the thread advances one bucket and runs what is due there, so
+ * scheduling and cancelling are O(1) and precision is one tick ({@code timer-tick-ms}).
+ *
+ * <p>Tasks run on the timer thread and must not block.
+ */
+public final class HashedWheelTimer {
+
+    /** Handle for a scheduled task */
+    public interface Timeout {
+        /**
+         * @return false if the task already ran or was already cancelled
+         */
+        boolean cancel();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    // Handed over from scheduling threads; only the timer thread touches the buckets
+    private final Queue<WheelTimeout> incoming = new ConcurrentLinkedQueue<>();
+    private final String name;
+    private volatile Thread worker;
+    private volatile boolean stopped = false;
+    private long startNanos;
+    private long tick = 0;
+
+    /**
+     * Timer with {@code timer-tick-ms} ticks and {@code timer-wheel-size} buckets
+     */
+    public static HashedWheelTimer fromConfig(String name) {
+        return new HashedWheelTimer(name, Config.getInt("timer-tick-ms", 100), Config.getInt("timer-wheel-size", 512));
+    }
+
+    public HashedWheelTimer(String name, long tickMillis, int buckets) {
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(16, buckets) - 1) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+        this.mask = size - 1;
+    }
+
+    /**
+     * Run {@code task} once after {@code delay}. The timer thread starts on first use.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        start();
+        WheelTimeout timeout = new WheelTimeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stop the timer thread; tasks that have not run yet are dropped
+     */
+    public void stop() {
+        stopped = true;
+        Thread thread = worker;
+        if (thread != null) thread.interrupt();
+    }
+
+    private void start() {
+        if (worker != null) return;
+        synchronized (this) {
+            if (worker != null || stopped) return;
+            startNanos = System.nanoTime();
+            Thread thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private void run() {
+        while (!stopped) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) return;
+                    continue;
+                }
+            }
+            transferIncoming();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        WheelTimeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            if (timeout.state.get() != PENDING) continue;
+            // Never schedule into the past: something already due runs on the current tick
+            long dueTick = Math.max(tick, (timeout.deadline - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.rounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (dueTick & mask)].timeouts.add(timeout);
+        }
+    }
+
+    private void expire(Bucket wheelBucket) {
+        ArrayList<WheelTimeout> bucket = wheelBucket.timeouts;
+        int kept = 0;
+        for (int i = 0, n = bucket.size(); i < n; i++) {
+            WheelTimeout timeout = bucket.get(i);
+            if (timeout.state.get() != PENDING) continue;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            if (timeout.state.compareAndSet(PENDING, EXPIRED)) {
+                try {
+                    timeout.task.run();
+                } catch (Throwable t) {
+                    logger.warn("Timer task failed: {}", t.getMessage(), t);
+                }
+            }
+        }
+        // Drop what ran or was cancelled
+        for (int i = bucket.size() - 1; i >= kept; i--) bucket.remove(i);
+    }
+
+    /** Timeouts due on one slot of the wheel, in this or a later round */
+    private static final class Bucket {
+        final ArrayList<WheelTimeout> timeouts = new ArrayList<>();
+    }
+
+    private static final class WheelTimeout implements Timeout {
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        long rounds;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+    }
+}
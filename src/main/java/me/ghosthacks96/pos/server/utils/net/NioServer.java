@@ -0,0 +1,428 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import me.ghosthacks96.pos.server.utils.protocol.BinaryCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking terminal transport. One acceptor thread hands new channels to a small, fixed set of
+ * selector loops which read into direct buffers and frame newline-terminated messages (or
+ * length-prefixed frames once a terminal negotiates binary). Complete messages are dispatched to
+ * the {@link ClientHandler} on a worker pool, in order per connection, so slow database work never
+ * stalls a selector loop.
+ */
+public class NioServer {
+    private static final Logger logger = LoggerFactory.getLogger(NioServer.class);
+
+    // Terminals never send lines anywhere near this long; anything bigger is a broken client
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+
+    private final int port;
+    private final IoLoop[] loops;
+    private final ExecutorService workers;
+    private final Consumer<ClientHandler> onConnect;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+
+    public NioServer(int port, int ioThreads, int workerThreads, Consumer<ClientHandler> onConnect) {
+        this.port = port;
+        this.onConnect = onConnect;
+        this.loops = new IoLoop[Math.max(1, ioThreads)];
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), namedDaemon("POS-NIO-Worker"));
+    }
+
+    /**
+     * Bind the listener and start the acceptor and selector loops
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+            loops[i].start();
+        }
+
+        acceptThread = new Thread(this::acceptLoop, "POS-NIO-Acceptor");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        ConsoleHandler.printInfo("POS Server (nio, " + loops.length + " io loops) started on port " + port + ". Waiting for clients...");
+    }
+
+    /**
+     * Close the listener; connections already accepted keep being served
+     */
+    public void stopAccepting() {
+        running = false;
+        try {
+            if (acceptSelector != null) acceptSelector.close();
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            logger.warn("Error closing nio listener: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop accepting, close every connection and release the selector threads
+     */
+    public void stop() {
+        stopAccepting();
+        for (IoLoop loop : loops) {
+            if (loop != null) loop.shutdown();
+        }
+        workers.shutdown();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (running) {
+                acceptSelector.select();
+                Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid() || !key.isAcceptable()) continue;
+                    SocketChannel channel;
+                    while ((channel = serverChannel.accept()) != null) {
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].adopt(channel);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // stop() closed the selector
+        } catch (IOException e) {
+            if (running) {
+                ConsoleHandler.printError("Error accepting nio clients: " + e.getMessage());
+                logger.error("Error accepting nio clients: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private static ThreadFactory namedDaemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A single selector thread owning the reads and writes for its share of the connections
+     */
+    private final class IoLoop extends Thread {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Shared by every connection on this loop; bytes are copied out into the line buffers
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+
+        IoLoop(int index) throws IOException {
+            super("POS-NIO-Loop-" + index);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void adopt(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    Connection connection = new Connection(this, channel, key);
+                    key.attach(connection);
+                    connection.handler = new ClientHandler(connection.ip, connection.outbound);
+                    onConnect.accept(connection.handler);
+                } catch (Exception e) {
+                    logger.error("Failed to register nio client: {}", e.getMessage(), e);
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void shutdown() {
+            execute(() -> {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection connection) connection.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.warn("Error closing selector: {}", e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) task.run();
+                    if (!selector.isOpen()) break;
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (connection == null || !key.isValid()) continue;
+                        if (key.isReadable()) connection.onReadable();
+                        if (key.isValid() && key.isWritable()) connection.onWritable();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // loop shut down
+            } catch (IOException e) {
+                logger.error("Selector loop {} failed: {}", getName(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Per-terminal state: inbound line assembly, outbound byte queue and the ordered dispatch lane
+     */
+    private final class Connection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String ip;
+        // Bounded per-session queue the handler writes into and this loop drains
+        private final OutboundQueue outbound;
+        private final AtomicBoolean writeRequested = new AtomicBoolean();
+        private ByteBuffer writing;
+        // Text lines as byte[] (the parser trims '\r'), binary frame payloads wrapped in a ByteBuffer
+        private final Queue<Object> inbound = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean dispatching = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // The queue is closed and what is left in it is being written out; loop thread only
+        private boolean draining = false;
+
+        private byte[] line = new byte[256];
+        private int lineLength = 0;
+        // Binary framing state: payload length once the varint prefix is complete, else -1
+        private int frameLength = -1;
+        private int varintValue = 0;
+        private int varintShift = 0;
+        ClientHandler handler;
+
+        Connection(IoLoop loop, SocketChannel channel, SelectionKey key) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.outbound = OutboundQueue.fromConfig(this::requestWrite, () -> loop.execute(this::drainAndClose));
+            this.ip = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        }
+
+        void onReadable() {
+            if (draining) return;
+            ByteBuffer buffer = loop.readBuffer;
+            try {
+                int read;
+                while ((read = channel.read(buffer.clear())) > 0) {
+                    buffer.flip();
+                    if (handler.isBinaryInput()) {
+                        frameBinary(buffer);
+                    } else {
+                        frameLines(buffer);
+                    }
+                }
+                if (read < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                if (POSServer.config != null && ConsoleHandler.DEBUG) logger.debug("Read failed for {}: {}", ip, e.getMessage());
+                close();
+                return;
+            }
+            scheduleDispatch();
+        }
+
+        private void frameLines(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    inbound.add(Arrays.copyOf(line, lineLength));
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        if (line.length >= MAX_LINE_BYTES) throw new IOException("Line exceeds " + MAX_LINE_BYTES + " bytes");
+                        line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_BYTES));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+
+        private void frameBinary(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (frameLength < 0) {
+                    byte b = buffer.get();
+                    varintValue |= (b & 0x7F) << varintShift;
+                    if ((b & 0x80) != 0) {
+                        varintShift += 7;
+                        if (varintShift > 28) throw new IOException("Malformed frame length");
+                        continue;
+                    }
+                    frameLength = varintValue;
+                    varintValue = 0;
+                    varintShift = 0;
+                    // A fifth length byte can reach the sign bit
+                    if (frameLength < 0) throw new IOException("Malformed frame length");
+                    if (frameLength > BinaryCodec.MAX_FRAME_BYTES) throw new IOException("Frame exceeds " + BinaryCodec.MAX_FRAME_BYTES + " bytes");
+                    if (line.length < frameLength) line = new byte[frameLength];
+                    lineLength = 0;
+                } else {
+                    int n = Math.min(buffer.remaining(), frameLength - lineLength);
+                    buffer.get(line, lineLength, n);
+                    lineLength += n;
+                }
+                if (frameLength >= 0 && lineLength == frameLength) {
+                    inbound.add(ByteBuffer.wrap(Arrays.copyOf(line, frameLength)));
+                    lineLength = 0;
+                    frameLength = -1;
+                }
+            }
+        }
+
+        /**
+         * Run queued messages on the worker pool, one drain at a time so ordering is preserved
+         */
+        private void scheduleDispatch() {
+            if (inbound.isEmpty() || !dispatching.compareAndSet(false, true)) return;
+            workers.execute(() -> {
+                try {
+                    Object message;
+                    while ((message = inbound.poll()) != null) {
+                        if (!POSServer.running || closed.get()) break;
+                        try {
+                            if (message instanceof ByteBuffer frame) {
+                                handler.handleFrame(frame.array());
+                            } else {
+                                byte[] line = (byte[]) message;
+                                handler.handleLine(line, line.length);
+                            }
+                        } catch (Exception e) {
+                            ConsoleHandler.printError("Error handling client " + ip + ": " + e.getMessage());
+                            logger.error("Error handling client {}: {}", ip, e.getMessage(), e);
+                        }
+                    }
+                } finally {
+                    dispatching.set(false);
+                }
+                // A line may have arrived between the last poll and releasing the lane
+                if (!inbound.isEmpty() && !closed.get()) scheduleDispatch();
+            });
+        }
+
+        /**
+         * Called from any thread after bytes are queued; one write task is pending at a time
+         */
+        private void requestWrite() {
+            if (!writeRequested.compareAndSet(false, true)) return;
+            loop.execute(() -> {
+                writeRequested.set(false);
+                if (key.isValid()) {
+                    key.interestOps(draining ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    onWritable();
+                }
+            });
+        }
+
+        void onWritable() {
+            try {
+                while (true) {
+                    if (writing == null) {
+                        byte[] next = outbound.poll();
+                        if (next == null) break;
+                        writing = ByteBuffer.wrap(next);
+                    }
+                    channel.write(writing);
+                    if (writing.hasRemaining()) return;
+                    writing = null;
+                }
+                if (draining) {
+                    close();
+                } else if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * The handler closed the queue: stop reading, write out what is still queued, then close
+         * the channel. A terminal that does not read it within close-drain-ms is cut off.
+         */
+        private void drainAndClose() {
+            if (closed.get() || draining) return;
+            draining = true;
+            if (handler == null || !key.isValid()) {
+                close();
+                return;
+            }
+            handler.schedule(() -> loop.execute(this::close), Config.getInt("close-drain-ms", 2000));
+            key.interestOps(SelectionKey.OP_WRITE);
+            onWritable();
+        }
+
+        /**
+         * Close the channel now, discarding anything not yet written
+         */
+        void close() {
+            if (!closed.compareAndSet(false, true)) return;
+            key.cancel();
+            closeQuietly(channel);
+            writing = null;
+            outbound.clear();
+            if (handler != null) handler.closeConnection();
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
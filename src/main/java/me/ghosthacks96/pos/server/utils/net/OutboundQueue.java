@@ -0,0 +1,389 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded per-session queue of encoded bytes waiting for the socket. Request handlers and pushes
+ * only ever enqueue; the transport drains it (a writer thread for the blocking transport, the
+ * selector loop for nio), so a terminal that stops reading can never stall the thread that
+ * produced a message.
+ *
+ * <p>Responses to the terminal's own requests are critical and always queued. Pushes are not, and
+ * once the session is over {@code outbound-max-bytes} the configured {@link Policy} decides what
+ * happens to them. A single critical chunk let through with {@link #allowOversized()} does not
+ * count towards the limits while it is queued.
+ */
+public final class OutboundQueue {
+
+    public enum Policy {
+        /** Drop pushes while over budget */
+        DROP,
+        /** Replace a pending push with the same key; drop keyless pushes while over budget */
+        COALESCE,
+        /** Disconnect the terminal as soon as it is over budget */
+        DISCONNECT;
+
+        public static Policy fromConfig() {
+            String value = Config.getString("outbound-policy", "coalesce");
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return COALESCE;
+            }
+        }
+    }
+
+    // Critical responses may run past the budget, but not without limit
+    private static final int HARD_LIMIT_FACTOR = 4;
+
+    private final Policy policy;
+    private final long maxBytes;
+    private final Runnable onReady;
+    private final Runnable onClose;
+    private volatile Runnable onOverflow;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Map<String, Entry> pendingByKey = new HashMap<>();
+    // Run once at most half the budget is queued; see whenWritable()
+    private List<Runnable> writableWaiters = new ArrayList<>();
+    private long bytes = 0;
+    // Queued bytes of chunks let past the limits by allowOversized()
+    private long oversizedBytes = 0;
+    private boolean allowOversized = false;
+    private long highWaterBytes = 0;
+    private boolean closed = false;
+    private boolean overflowed = false;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    /**
+     * @param onReady called after bytes are queued, for transports that must be woken (may be null)
+     * @param onClose called once when the queue is closed (may be null)
+     */
+    public OutboundQueue(Policy policy, long maxBytes, Runnable onReady, Runnable onClose) {
+        this.policy = policy;
+        this.maxBytes = Math.max(1024, maxBytes);
+        this.onReady = onReady;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Queue sized and configured from outbound-policy and outbound-max-bytes
+     */
+    public static OutboundQueue fromConfig(Runnable onReady, Runnable onClose) {
+        return new OutboundQueue(Policy.fromConfig(), Config.getInt("outbound-max-bytes", 256 * 1024), onReady, onClose);
+    }
+
+    /**
+     * What to do when the session has to be cut off; set by the owning ClientHandler
+     */
+    public void setOverflowHandler(Runnable onOverflow) {
+        this.onOverflow = onOverflow;
+    }
+
+    /**
+     * Let the next critical chunk run past the budget and the hard limit, for a response the
+     * terminal can only take whole. Only one such chunk is exempt at a time; while it is queued,
+     * the limits apply to everything else.
+     */
+    public void allowOversized() {
+        lock.lock();
+        try {
+            allowOversized = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue a response to one of the terminal's own requests
+     */
+    public boolean offerCritical(byte[] data, int offset, int length) {
+        return offer(Arrays.copyOfRange(data, offset, offset + length), true, null);
+    }
+
+    /**
+     * Queue a server push. Pushes with the same non-null key supersede each other while still
+     * pending. The array is not copied, so one encoded broadcast can be shared by every session.
+     */
+    public boolean offerPush(byte[] data, String coalesceKey) {
+        return offer(data, false, coalesceKey);
+    }
+
+    private boolean offer(byte[] data, boolean critical, String key) {
+        boolean accepted;
+        boolean overflow = false;
+        lock.lock();
+        try {
+            if (closed) return false;
+            if (critical) {
+                Entry entry = new Entry(data, null);
+                // One at a time; a second while the first is still queued counts as usual
+                if (allowOversized && oversizedBytes == 0) {
+                    entry.oversized = true;
+                    oversizedBytes += data.length;
+                }
+                allowOversized = false;
+                append(entry);
+                accepted = true;
+                long limited = bytes - oversizedBytes;
+                if (limited > maxBytes && (policy == Policy.DISCONNECT || limited > maxBytes * HARD_LIMIT_FACTOR)) {
+                    overflow = true;
+                }
+            } else {
+                Entry pending = policy == Policy.COALESCE && key != null ? pendingByKey.get(key) : null;
+                if (pending != null) {
+                    bytes += data.length - pending.data.length;
+                    pending.data = data;
+                    coalesced.increment();
+                    accepted = true;
+                } else if (bytes - oversizedBytes + data.length <= maxBytes) {
+                    Entry entry = new Entry(data, key);
+                    append(entry);
+                    if (key != null && policy == Policy.COALESCE) pendingByKey.put(key, entry);
+                    accepted = true;
+                } else if (policy == Policy.DISCONNECT) {
+                    overflow = true;
+                    accepted = false;
+                } else {
+                    dropped.increment();
+                    accepted = false;
+                }
+            }
+            // Only the first overflow triggers the disconnect
+            overflow = overflow && !overflowed;
+            if (overflow) overflowed = true;
+            if (accepted) notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (overflow) {
+            Runnable handler = onOverflow;
+            if (handler != null) handler.run();
+        } else if (accepted && onReady != null) {
+            onReady.run();
+        }
+        return accepted;
+    }
+
+    private void append(Entry entry) {
+        entries.addLast(entry);
+        bytes += entry.data.length;
+        if (bytes > highWaterBytes) highWaterBytes = bytes;
+    }
+
+    /**
+     * Next chunk to write, or null if nothing is waiting
+     */
+    public byte[] poll() {
+        byte[] data;
+        List<Runnable> writable;
+        lock.lock();
+        try {
+            data = removeFirst();
+            writable = takeWritableWaiters();
+        } finally {
+            lock.unlock();
+        }
+        runAll(writable);
+        return data;
+    }
+
+    /**
+     * Wait for the next chunk. Returns null once the queue is closed and fully drained.
+     */
+    public byte[] take() throws InterruptedException {
+        byte[] data;
+        List<Runnable> writable;
+        lock.lock();
+        try {
+            while (entries.isEmpty()) {
+                if (closed) return null;
+                notEmpty.await();
+            }
+            data = removeFirst();
+            writable = takeWritableWaiters();
+        } finally {
+            lock.unlock();
+        }
+        runAll(writable);
+        return data;
+    }
+
+    private byte[] removeFirst() {
+        Entry entry = entries.pollFirst();
+        if (entry == null) return null;
+        if (entry.key != null) pendingByKey.remove(entry.key, entry);
+        if (entry.oversized) oversizedBytes -= entry.data.length;
+        bytes -= entry.data.length;
+        sent.increment();
+        return entry.data;
+    }
+
+    /**
+     * Run {@code task} once at most half the byte budget is queued, or once the queue is closed;
+     * straight away if that is already the case. For bulk producers that must not park a shared
+     * thread while the terminal catches up. The task runs on the thread draining the queue, so it
+     * should only hand the work on.
+     */
+    public void whenWritable(Runnable task) {
+        lock.lock();
+        try {
+            if (!closed && bytes > maxBytes / 2) {
+                writableWaiters.add(task);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        task.run();
+    }
+
+    /**
+     * Waiters whose condition now holds, for the caller to run once it has released the lock
+     */
+    private List<Runnable> takeWritableWaiters() {
+        if (writableWaiters.isEmpty() || (!closed && bytes > maxBytes / 2)) return null;
+        List<Runnable> ready = writableWaiters;
+        writableWaiters = new ArrayList<>();
+        return ready;
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        if (tasks != null) tasks.forEach(Runnable::run);
+    }
+
+    /**
+     * Stop accepting messages. Whatever is already queued can still be drained.
+     */
+    public void close() {
+        List<Runnable> writable;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            notEmpty.signalAll();
+            writable = takeWritableWaiters();
+        } finally {
+            lock.unlock();
+        }
+        runAll(writable);
+        if (onClose != null) onClose.run();
+    }
+
+    /**
+     * Close and discard everything pending, for a connection that is already gone
+     */
+    public void clear() {
+        boolean wasOpen;
+        List<Runnable> writable;
+        lock.lock();
+        try {
+            wasOpen = !closed;
+            closed = true;
+            entries.clear();
+            pendingByKey.clear();
+            bytes = 0;
+            oversizedBytes = 0;
+            allowOversized = false;
+            notEmpty.signalAll();
+            writable = takeWritableWaiters();
+        } finally {
+            lock.unlock();
+        }
+        runAll(writable);
+        // The transport still has to hear about it, or an nio channel would stay open
+        if (wasOpen && onClose != null) onClose.run();
+    }
+
+    /**
+     * OutputStream view for the ResponseEncoder; every write is one critical chunk
+     */
+    public OutputStream stream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                offerCritical(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (len > 0) offerCritical(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                OutboundQueue.this.close();
+            }
+        };
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHighWaterBytes() {
+        lock.lock();
+        try {
+            return highWaterBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    private static final class Entry {
+        byte[] data;
+        final String key;
+        boolean oversized = false;
+
+        Entry(byte[] data, String key) {
+            this.data = data;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports virtual threads that park or block while pinned to their carrier, using the JFR
+ * {@code jdk.VirtualThreadPinned} event. The event fires only at that park or block: time spent
+ * inside a native call, such as a sqlite-jdbc query, holds the carrier but is not reported unless
+ * the thread blocks before it returns.
+ *
+ * <p>On the Java 24 target (JEP 491) a virtual thread no longer pins while it waits for or inside
+ * a {@code synchronized} monitor, so locks chosen over {@code synchronized} to avoid pinning make
+ * no difference there. What is left to report is blocking inside native frames and class
+ * initializers.
+ */
+public final class PinningMonitor {
+    private static final Logger logger = LoggerFactory.getLogger(PinningMonitor.class);
+
+    private static final AtomicLong pinnedEvents = new AtomicLong();
+    private static final AtomicLong pinnedNanos = new AtomicLong();
+    private static volatile String lastPinnedAt = "";
+    private static RecordingStream stream;
+
+    private PinningMonitor() {
+    }
+
+    /**
+     * Start streaming pinned events that last longer than the threshold
+     */
+    public static synchronized void start(Duration threshold) {
+        if (stream != null) return;
+        try {
+            stream = new RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+            stream.onEvent("jdk.VirtualThreadPinned", PinningMonitor::onPinned);
+            stream.startAsync();
+            ConsoleHandler.printInfo("Virtual thread pinning monitor started (threshold " + threshold.toMillis() + "ms)");
+        } catch (Exception e) {
+            logger.warn("Could not start pinning monitor: {}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    public static synchronized void stop() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private static void onPinned(RecordedEvent event) {
+        pinnedEvents.incrementAndGet();
+        pinnedNanos.addAndGet(event.getDuration().toNanos());
+        String where = "unknown";
+        if (event.getStackTrace() != null) {
+            List<RecordedFrame> frames = event.getStackTrace().getFrames();
+            // Report the first application frame, that is the code that has to change
+            for (RecordedFrame frame : frames) {
+                String type = frame.getMethod().getType().getName();
+                if (type.startsWith("me.ghosthacks96")) {
+                    where = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+                    break;
+                }
+            }
+        }
+        lastPinnedAt = where;
+        logger.warn("Virtual thread pinned for {}ms at {}", event.getDuration().toMillis(), where);
+    }
+
+    public static long getPinnedEvents() {
+        return pinnedEvents.get();
+    }
+
+    public static long getPinnedMillis() {
+        return pinnedNanos.get() / 1_000_000;
+    }
+
+    public static String getLastPinnedAt() {
+        return lastPinnedAt;
+    }
+
+    public static boolean isRunning() {
+        return stream != null;
+    }
+}
@@ -0,0 +1,230 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.controllers.commands.CommandRegistry.Cost;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for terminal requests. Every request takes a token from its session's
+ * bucket, its IP's bucket and, once logged in, its user's bucket, each with separate budgets for
+ * cheap and expensive commands ({@link Cost}). IP and user budgets are the session budget times
+ * {@code rate-ip-factor} and {@code rate-user-factor}, since several terminals can share either.
+ *
+ * <p>Buckets are lock-free: each is a single "theoretical arrival time" updated by CAS (the
+ * generic cell rate algorithm), which behaves exactly like a token bucket refilled at
+ * {@code per-second} up to {@code burst} tokens.
+ */
+public final class RateLimiter {
+
+    // Idle IP and user buckets are swept out every this many requests
+    private static final int PURGE_INTERVAL = 4096;
+    private static final long ORIGIN = System.nanoTime();
+
+    private final ConcurrentHashMap<String, Buckets> byIp = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Buckets> byUser = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile Budget[] budgets;
+
+    /**
+     * Rate and burst for one cost class at one scope
+     */
+    private record Budget(long intervalNanos, long toleranceNanos, int burst) {
+        static Budget of(int perSecond, int burst, int factor) {
+            long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, perSecond * factor);
+            int scaledBurst = Math.max(1, burst * factor);
+            return new Budget(interval, interval * (scaledBurst - 1), scaledBurst);
+        }
+    }
+
+    private static final int SESSION = 0;
+    private static final int IP = 1;
+    private static final int USER = 2;
+
+    /**
+     * One bucket: the time at which it would be full again, in nanos since ORIGIN
+     */
+    public static final class Bucket {
+        private final AtomicLong fullAt = new AtomicLong();
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+
+        /**
+         * Take a token. Returns 0 if granted, otherwise how many nanos until one is available.
+         */
+        long tryAcquire(long now, Budget budget) {
+            while (true) {
+                long current = fullAt.get();
+                long base = Math.max(current, now);
+                long wait = base - now - budget.toleranceNanos();
+                if (wait > 0) {
+                    throttled.increment();
+                    return wait;
+                }
+                if (fullAt.compareAndSet(current, base + budget.intervalNanos())) {
+                    allowed.increment();
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Give back a token taken for a request another scope then refused
+         */
+        void refund(Budget budget) {
+            fullAt.addAndGet(-budget.intervalNanos());
+            allowed.decrement();
+        }
+
+        double available(long now, Budget budget) {
+            long used = Math.max(fullAt.get(), now) - now;
+            double tokens = (double) (budget.toleranceNanos() + budget.intervalNanos() - used) / budget.intervalNanos();
+            return Math.max(0, Math.min(budget.burst(), Math.floor(tokens * 10) / 10));
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() <= now;
+        }
+
+        Map<String, Object> toMap(long now, Budget budget) {
+            Map<String, Object> state = new HashMap<>();
+            state.put("available", available(now, budget));
+            state.put("burst", budget.burst());
+            state.put("allowed", allowed.sum());
+            state.put("throttled", throttled.sum());
+            return state;
+        }
+    }
+
+    /**
+     * A cheap and an expensive bucket for one key
+     */
+    public static final class Buckets {
+        private final Bucket cheap = new Bucket();
+        private final Bucket expensive = new Bucket();
+
+        Bucket get(Cost cost) {
+            return cost == Cost.CHEAP ? cheap : expensive;
+        }
+
+        boolean isFull(long now) {
+            return cheap.isFull(now) && expensive.isFull(now);
+        }
+    }
+
+    public boolean isEnabled() {
+        return Config.getBoolean("rate-limit-enabled", true);
+    }
+
+    /**
+     * Admit a request or say how long to wait. Returns 0 if admitted, otherwise the retry-after
+     * hint in milliseconds. Tokens are only kept when every scope admits the request.
+     */
+    public long acquire(Buckets session, String ip, String username, Cost cost) {
+        Budget[] limits = budgets();
+        long now = System.nanoTime() - ORIGIN;
+        if (requests.incrementAndGet() % PURGE_INTERVAL == 0) purgeIdle(now);
+
+        int i = cost == Cost.CHEAP ? 0 : 3;
+        Bucket sessionBucket = session.get(cost);
+        long wait = sessionBucket.tryAcquire(now, limits[i + SESSION]);
+        if (wait > 0) return toMillis(wait);
+
+        Bucket ipBucket = ip != null ? byIp.computeIfAbsent(ip, k -> new Buckets()).get(cost) : null;
+        if (ipBucket != null && (wait = ipBucket.tryAcquire(now, limits[i + IP])) > 0) {
+            sessionBucket.refund(limits[i + SESSION]);
+            return toMillis(wait);
+        }
+
+        if (username != null) {
+            Bucket userBucket = byUser.computeIfAbsent(username.toLowerCase(), k -> new Buckets()).get(cost);
+            if ((wait = userBucket.tryAcquire(now, limits[i + USER])) > 0) {
+                sessionBucket.refund(limits[i + SESSION]);
+                if (ipBucket != null) ipBucket.refund(limits[i + IP]);
+                return toMillis(wait);
+            }
+        }
+        return 0;
+    }
+
+    private static long toMillis(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos + 999_999));
+    }
+
+    /**
+     * Budgets are read on first use, once the configuration is loaded
+     */
+    private Budget[] budgets() {
+        Budget[] limits = budgets;
+        if (limits == null) {
+            int cheapRate = Config.getInt("rate-cheap-per-second", 20);
+            int cheapBurst = Config.getInt("rate-cheap-burst", 40);
+            int expensiveRate = Config.getInt("rate-expensive-per-second", 5);
+            int expensiveBurst = Config.getInt("rate-expensive-burst", 20);
+            int ipFactor = Config.getInt("rate-ip-factor", 4);
+            int userFactor = Config.getInt("rate-user-factor", 2);
+            limits = new Budget[]{
+                    Budget.of(cheapRate, cheapBurst, 1),
+                    Budget.of(cheapRate, cheapBurst, ipFactor),
+                    Budget.of(cheapRate, cheapBurst, userFactor),
+                    Budget.of(expensiveRate, expensiveBurst, 1),
+                    Budget.of(expensiveRate, expensiveBurst, ipFactor),
+                    Budget.of(expensiveRate, expensiveBurst, userFactor)
+            };
+            budgets = limits;
+        }
+        return limits;
+    }
+
+    /**
+     * A full bucket holds no state worth keeping
+     */
+    private void purgeIdle(long now) {
+        byIp.values().removeIf(buckets -> buckets.isFull(now));
+        byUser.values().removeIf(buckets -> buckets.isFull(now));
+    }
+
+    /**
+     * Bucket state for one session, for the clients list
+     */
+    public Map<String, Object> toMap(Buckets session) {
+        Budget[] limits = budgets();
+        long now = System.nanoTime() - ORIGIN;
+        Map<String, Object> state = new HashMap<>();
+        state.put("cheap", session.cheap.toMap(now, limits[SESSION]));
+        state.put("expensive", session.expensive.toMap(now, limits[3 + SESSION]));
+        return state;
+    }
+
+    /**
+     * IP and user bucket state, for the rate limit endpoint
+     */
+    public Map<String, Object> toMap() {
+        Budget[] limits = budgets();
+        long now = System.nanoTime() - ORIGIN;
+        Map<String, Object> state = new HashMap<>();
+        state.put("enabled", isEnabled());
+        state.put("ip", scopeToMap(byIp, now, limits[IP], limits[3 + IP]));
+        state.put("user", scopeToMap(byUser, now, limits[USER], limits[3 + USER]));
+        return state;
+    }
+
+    private static List<Map<String, Object>> scopeToMap(Map<String, Buckets> scope, long now, Budget cheap, Budget expensive) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        scope.forEach((key, buckets) -> {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("key", key);
+            entry.put("cheap", buckets.cheap.toMap(now, cheap));
+            entry.put("expensive", buckets.expensive.toMap(now, expensive));
+            entries.add(entry);
+        });
+        return entries;
+    }
+}
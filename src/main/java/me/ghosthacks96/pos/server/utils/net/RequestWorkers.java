@@ -0,0 +1,47 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool for pipelined read-only requests (correlation-tagged DAT lookups). Sized by
+ * {@code request-worker-threads}; with {@code thread-mode: virtual} each request gets its own
+ * virtual thread instead.
+ */
+public final class RequestWorkers {
+
+    private static volatile ExecutorService pool;
+
+    private RequestWorkers() {
+    }
+
+    public static void submit(Runnable task) {
+        ExecutorService executor = pool;
+        if (executor == null) {
+            synchronized (RequestWorkers.class) {
+                executor = pool;
+                if (executor == null) {
+                    executor = pool = create();
+                }
+            }
+        }
+        executor.execute(task);
+    }
+
+    private static ExecutorService create() {
+        if (TerminalThreads.isVirtual()) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("POS-Request-", 1).factory());
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "POS-Request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(Math.max(1, Config.getInt("request-worker-threads", 4)), factory);
+    }
+}
@@ -0,0 +1,114 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live terminal sessions, keyed by session id with secondary indexes by IP and by logged-in
+ * username. Add and remove are O(1) and never block readers; {@link #all()} is a weakly
+ * consistent view, so broadcasts and the web dashboard can iterate while terminals come and go.
+ */
+public final class SessionRegistry {
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, ClientHandler> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<ClientHandler>> byIp = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<ClientHandler>> byUser = new ConcurrentHashMap<>();
+
+    /**
+     * Assign the handler a session id and index it by IP. A handler that already closed (a
+     * terminal that disconnects during the greeting) is removed again straight away.
+     */
+    public long register(ClientHandler handler) {
+        long id = nextId.getAndIncrement();
+        handler.setSessionId(id);
+        byId.put(id, handler);
+        addTo(byIp, handler.getIp(), handler);
+        if (!handler.isConnected()) unregister(handler);
+        return id;
+    }
+
+    /**
+     * Remove a handler from every index. Safe to call more than once.
+     */
+    public void unregister(ClientHandler handler) {
+        if (byId.remove(handler.getSessionId(), handler)) {
+            removeFrom(byIp, handler.getIp(), handler);
+            String username = handler.getUsernameOrNull();
+            if (username != null) removeFrom(byUser, key(username), handler);
+        }
+    }
+
+    /**
+     * Index a session under the user that just logged in on it
+     */
+    public void bindUser(ClientHandler handler, String username) {
+        if (byId.containsKey(handler.getSessionId())) addTo(byUser, key(username), handler);
+    }
+
+    public void unbindUser(ClientHandler handler, String username) {
+        if (username != null) removeFrom(byUser, key(username), handler);
+    }
+
+    public ClientHandler get(long sessionId) {
+        return byId.get(sessionId);
+    }
+
+    /**
+     * Sessions connected from an IP, empty if none
+     */
+    public Set<ClientHandler> byIp(String ip) {
+        Set<ClientHandler> sessions = ip != null ? byIp.get(ip) : null;
+        return sessions != null ? Collections.unmodifiableSet(sessions) : Collections.emptySet();
+    }
+
+    /**
+     * Sessions a user is logged in on, empty if none. Usernames match ignoring case.
+     */
+    public Set<ClientHandler> byUsername(String username) {
+        Set<ClientHandler> sessions = username != null ? byUser.get(key(username)) : null;
+        return sessions != null ? Collections.unmodifiableSet(sessions) : Collections.emptySet();
+    }
+
+    /**
+     * All live sessions; iteration takes no lock and never throws ConcurrentModificationException
+     */
+    public Collection<ClientHandler> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase();
+    }
+
+    private static void addTo(ConcurrentHashMap<String, Set<ClientHandler>> index, String key, ClientHandler handler) {
+        // Add inside compute, under the same bin lock as removeFrom, so the add cannot land in a
+        // set that removeFrom has just dropped from the index
+        index.compute(key, (k, set) -> {
+            if (set == null) set = ConcurrentHashMap.newKeySet();
+            set.add(handler);
+            return set;
+        });
+    }
+
+    private static void removeFrom(ConcurrentHashMap<String, Set<ClientHandler>> index, String key, ClientHandler handler) {
+        // Drop the bucket atomically once it is empty so IP churn does not leak keys
+        index.computeIfPresent(key, (k, set) -> {
+            set.remove(handler);
+            return set.isEmpty() ? null : set;
+        });
+    }
+}
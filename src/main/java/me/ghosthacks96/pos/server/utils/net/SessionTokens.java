@@ -0,0 +1,139 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.models.UserModel;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signed, expiring tokens that let a terminal that lost its socket pick its login back up with
+ * {@code CMD[:_:]RESUME} instead of a full {@code CMD[:_:]LOGIN}. Only the user id is kept under
+ * the token id; the caller reloads the user on redeem, so a deactivation or permission change
+ * made since the login applies to the resumed session.
+ *
+ * <pre>
+ * token = hex(tokenId) "." expiresAtMillis "." base64url(hmacSha256(hex(tokenId) "." expiresAtMillis))
+ * </pre>
+ *
+ * Tokens are single use: redeeming one revokes it and issues a new one. The signing key is
+ * generated at startup, so tokens do not outlive the server process.
+ */
+public final class SessionTokens {
+
+    public record Token(String value, long expiresAt) {
+    }
+
+    private record Entry(int userId, long expiresAt) {
+    }
+
+    // Sweep expired entries every this many issued tokens
+    private static final int PURGE_INTERVAL = 256;
+
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong issued = new AtomicLong();
+
+    public SessionTokens() {
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        key = new SecretKeySpec(secret, "HmacSHA256");
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 unavailable", e);
+            }
+        });
+    }
+
+    /**
+     * Issue a token for a user that just authenticated, valid for session-token-ttl-seconds
+     */
+    public Token issue(UserModel user) {
+        byte[] id = new byte[16];
+        random.nextBytes(id);
+        String tokenId = HexFormat.of().formatHex(id);
+        long expiresAt = System.currentTimeMillis() + Config.getInt("session-token-ttl-seconds", 8 * 60 * 60) * 1000L;
+        entries.put(tokenId, new Entry(user.getId(), expiresAt));
+        if (issued.incrementAndGet() % PURGE_INTERVAL == 0) purgeExpired();
+
+        String payload = tokenId + "." + expiresAt;
+        return new Token(payload + "." + sign(payload), expiresAt);
+    }
+
+    /**
+     * Redeem a token: returns the id of the user it was issued for and revokes the token, or -1 if
+     * the token is forged, expired, already used or revoked
+     */
+    public int redeem(String token) {
+        String tokenId = verify(token);
+        if (tokenId == null) return -1;
+        Entry entry = entries.remove(tokenId);
+        if (entry == null || entry.expiresAt() < System.currentTimeMillis()) return -1;
+        return entry.userId();
+    }
+
+    /**
+     * Revoke a token, for example on logout. Unknown or malformed tokens are ignored.
+     */
+    public void revoke(String token) {
+        String tokenId = verify(token);
+        if (tokenId != null) entries.remove(tokenId);
+    }
+
+    /**
+     * Revoke every outstanding token of a user, for when the user is changed, deactivated or removed
+     */
+    public void revokeUser(int userId) {
+        entries.values().removeIf(entry -> entry.userId() == userId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Token id of a token whose signature and expiry check out, else null
+     */
+    private String verify(String token) {
+        if (token == null) return null;
+        int signatureStart = token.lastIndexOf('.');
+        int expiryStart = signatureStart > 0 ? token.lastIndexOf('.', signatureStart - 1) : -1;
+        if (expiryStart <= 0) return null;
+
+        String payload = token.substring(0, signatureStart);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) return null;
+
+        try {
+            if (Long.parseLong(token.substring(expiryStart + 1, signatureStart)) < System.currentTimeMillis()) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return token.substring(0, expiryStart);
+    }
+
+    private String sign(String payload) {
+        byte[] signature = macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt() < now);
+    }
+}
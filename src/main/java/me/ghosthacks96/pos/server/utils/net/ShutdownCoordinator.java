@@ -0,0 +1,232 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import me.ghosthacks96.pos.server.utils.controllers.ClientHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drains the terminal server in order instead of cutting terminals off mid-request:
+ *
+ * <ol>
+ *     <li>stop accepting connections, and answer new TRA writes with FAIL and a retry hint</li>
+ *     <li>let requests already running finish, up to {@code drain-timeout-ms}</li>
+ *     <li>send SHUTDOWN and wait for outbound queues to empty, up to {@code drain-flush-ms}</li>
+ *     <li>close the sessions and the transport</li>
+ *     <li>run the registered flush hooks (write-behind buffers)</li>
+ *     <li>close the database connections</li>
+ * </ol>
+ *
+ * Started by the console {@code stop} command and by {@code POST /api/drain}; {@link #toMap()}
+ * reports progress for the dashboard.
+ */
+public final class ShutdownCoordinator {
+
+    public enum Phase {
+        RUNNING, STOP_ACCEPTING, DRAINING_REQUESTS, FLUSHING_OUTBOUND, CLOSING_SESSIONS,
+        FLUSHING_WRITERS, CLOSING_DATABASE, STOPPED
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ShutdownCoordinator.class);
+    private static final long POLL_MS = 20;
+
+    private final Map<String, Runnable> flushHooks = new LinkedHashMap<>();
+    private final AtomicBoolean active = new AtomicBoolean();
+    private final Map<Phase, Long> phaseMillis = new EnumMap<>(Phase.class);
+    private final LongAdder rejectedWrites = new LongAdder();
+    private volatile Phase phase = Phase.RUNNING;
+    private volatile long startedAt = 0;
+    private volatile long phaseStartedAt = 0;
+    private volatile long finishedAt = 0;
+    private volatile int sessionsAtStart = 0;
+    private volatile int abandonedRequests = 0;
+    private volatile long undeliveredBytes = 0;
+    private final List<String> failedHooks = new ArrayList<>();
+
+    /**
+     * Register something to flush after the sessions close and before the database does, such
+     * as a write-behind buffer. Hooks run in registration order; registering a name again
+     * replaces the earlier hook.
+     */
+    public synchronized void addFlushHook(String name, Runnable hook) {
+        flushHooks.put(name, hook);
+    }
+
+    /**
+     * True from the moment a drain starts; new writes should be refused
+     */
+    public boolean isDraining() {
+        return phase != Phase.RUNNING;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void recordRejectedWrite() {
+        rejectedWrites.increment();
+    }
+
+    /**
+     * Run the drain on the calling thread. Returns false if a drain is already running.
+     */
+    public boolean drain() {
+        if (!active.compareAndSet(false, true)) return false;
+        try {
+            runDrain();
+        } finally {
+            active.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * Start a drain in the background, for callers such as the web interface that must not
+     * block. Returns false if a drain is already running.
+     */
+    public boolean drainAsync() {
+        if (active.get()) return false;
+        Thread thread = new Thread(this::drain, "POS-Drain");
+        thread.setDaemon(false);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Back to normal operation, called when the server is started again
+     */
+    public synchronized void reset() {
+        if (active.get()) return;
+        phase = Phase.RUNNING;
+        synchronized (phaseMillis) {
+            phaseMillis.clear();
+        }
+        failedHooks.clear();
+        rejectedWrites.reset();
+        startedAt = phaseStartedAt = finishedAt = 0;
+        sessionsAtStart = abandonedRequests = 0;
+        undeliveredBytes = 0;
+    }
+
+    private void runDrain() {
+        startedAt = System.currentTimeMillis();
+        finishedAt = 0;
+        sessionsAtStart = POSServer.sessions.size();
+        ConsoleHandler.printInfo("Draining terminal server (" + sessionsAtStart + " sessions)...");
+
+        advance(Phase.STOP_ACCEPTING);
+        POSServer.stopAccepting();
+
+        advance(Phase.DRAINING_REQUESTS);
+        if (!await(() -> ClientHandler.getInFlightRequests() == 0, Config.getInt("drain-timeout-ms", 10000))) {
+            abandonedRequests = ClientHandler.getInFlightRequests();
+            ConsoleHandler.printWarning(abandonedRequests + " requests still running after drain-timeout-ms; continuing.");
+        }
+
+        advance(Phase.FLUSHING_OUTBOUND);
+        for (ClientHandler client : POSServer.sessions.all()) {
+            client.sendToClient("CMD[:_:]SHUTDOWN", true);
+        }
+        if (!await(() -> outboundBytes() == 0, Config.getInt("drain-flush-ms", 5000))) {
+            undeliveredBytes = outboundBytes();
+            ConsoleHandler.printWarning(undeliveredBytes + " queued bytes not delivered after drain-flush-ms; closing anyway.");
+        }
+
+        advance(Phase.CLOSING_SESSIONS);
+        for (ClientHandler client : POSServer.sessions.all()) {
+            client.closeConnection();
+        }
+        POSServer.stopTransport();
+
+        advance(Phase.FLUSHING_WRITERS);
+        List<Map.Entry<String, Runnable>> hooks;
+        synchronized (this) {
+            hooks = new ArrayList<>(flushHooks.entrySet());
+        }
+        for (Map.Entry<String, Runnable> hook : hooks) {
+            try {
+                hook.getValue().run();
+            } catch (Exception e) {
+                synchronized (this) {
+                    failedHooks.add(hook.getKey());
+                }
+                ConsoleHandler.printError("Flush hook " + hook.getKey() + " failed: " + e.getMessage());
+                logger.error("Flush hook {} failed: {}", hook.getKey(), e.getMessage(), e);
+            }
+        }
+
+        advance(Phase.CLOSING_DATABASE);
+        if (POSServer.databaseHandler != null) POSServer.databaseHandler.shutdown();
+
+        advance(Phase.STOPPED);
+        finishedAt = System.currentTimeMillis();
+        ConsoleHandler.printInfo("Drain complete in " + (finishedAt - startedAt) + "ms.");
+    }
+
+    private void advance(Phase next) {
+        long now = System.currentTimeMillis();
+        synchronized (phaseMillis) {
+            if (phase != Phase.RUNNING && phase != Phase.STOPPED) phaseMillis.put(phase, now - phaseStartedAt);
+        }
+        phase = next;
+        phaseStartedAt = now;
+        if (POSServer.config != null && ConsoleHandler.DEBUG) logger.debug("Drain phase: {}", next);
+    }
+
+    private static boolean await(BooleanSupplier done, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!done.getAsBoolean()) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            try {
+                Thread.sleep(POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long outboundBytes() {
+        long bytes = 0;
+        for (ClientHandler client : POSServer.sessions.all()) {
+            bytes += client.getOutboundQueue().getBytes();
+        }
+        return bytes;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("phase", phase.name());
+        status.put("draining", active.get());
+        status.put("startedAt", startedAt);
+        status.put("elapsedMs", startedAt == 0 ? 0 : (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+        status.put("sessionsAtStart", sessionsAtStart);
+        status.put("sessionsRemaining", POSServer.sessions.size());
+        status.put("inFlightRequests", ClientHandler.getInFlightRequests());
+        status.put("outboundBytes", outboundBytes());
+        status.put("rejectedWrites", rejectedWrites.sum());
+        status.put("abandonedRequests", abandonedRequests);
+        status.put("undeliveredBytes", undeliveredBytes);
+        Map<String, Object> phases = new LinkedHashMap<>();
+        synchronized (phaseMillis) {
+            phaseMillis.forEach((p, ms) -> phases.put(p.name(), ms));
+        }
+        status.put("phaseMs", phases);
+        synchronized (this) {
+            status.put("failedHooks", new ArrayList<>(failedHooks));
+        }
+        return status;
+    }
+}
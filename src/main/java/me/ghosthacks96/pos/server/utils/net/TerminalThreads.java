@@ -0,0 +1,32 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+
+/**
+ * Creates the accept and per-terminal threads for the blocking transport. With
+ * {@code thread-mode: virtual} every terminal gets a virtual thread, so thousands of idle
+ * connections cost heap-allocated stacks instead of OS threads.
+ */
+public final class TerminalThreads {
+
+    private TerminalThreads() {
+    }
+
+    /**
+     * True when the config asks for virtual threads
+     */
+    public static boolean isVirtual() {
+        return "virtual".equalsIgnoreCase(Config.getString("thread-mode", "platform"));
+    }
+
+    /**
+     * Start a named thread using the configured thread mode. Platform threads are daemons so
+     * they never hold the JVM open; virtual threads always are.
+     */
+    public static Thread start(String name, Runnable task) {
+        if (isVirtual()) {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+        return Thread.ofPlatform().name(name).daemon(true).start(task);
+    }
+}
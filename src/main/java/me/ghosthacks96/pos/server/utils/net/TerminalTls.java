@@ -0,0 +1,150 @@
+package me.ghosthacks96.pos.server.utils.net;
+
+import me.ghosthacks96.pos.server.utils.Config;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional TLS for the terminal listener ({@code tls-enabled}). The server certificate comes from
+ * a PKCS12 keystore; a self-signed one for testing can be generated with
+ *
+ * <pre>
+ * keytool -genkeypair -alias pos -keyalg EC -groupname secp256r1 -validity 825 \
+ *     -dname CN=pos-server -storetype PKCS12 -keystore terminal.p12 -storepass changeit
+ * </pre>
+ *
+ * Handhelds that roam between access points reconnect all day, so the server keeps sessions for
+ * {@code tls-session-timeout-seconds}: TLS 1.2 clients resume by session id from the server's
+ * cache, TLS 1.3 clients with the stateless session tickets the JDK issues. Either way a resumed
+ * handshake skips the certificate exchange and key agreement signature.
+ *
+ * <p>The handshake runs on the connection's own reader and writer threads on first use, never on
+ * the accept thread, so a slow terminal cannot hold up the listener.
+ */
+public final class TerminalTls {
+
+    private static final String TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+    private final SSLContext context;
+    private final String[] protocols;
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder handshakeNanos = new LongAdder();
+    private final LongAdder resumedNanos = new LongAdder();
+
+    private TerminalTls(SSLContext context, String[] protocols) {
+        this.context = context;
+        this.protocols = protocols;
+    }
+
+    public static boolean isEnabled() {
+        return Config.getBoolean("tls-enabled", false);
+    }
+
+    /**
+     * TLS settings from the {@code tls-*} configuration keys
+     */
+    public static TerminalTls fromConfig() throws IOException, GeneralSecurityException {
+        return create(Config.getString("tls-keystore", "terminal.p12"),
+                Config.getString("tls-keystore-password", "changeit").toCharArray(),
+                Config.getInt("tls-session-cache-size", 1000),
+                Config.getInt("tls-session-timeout-seconds", 86400),
+                Config.getString("tls-protocols", "TLSv1.3,TLSv1.2").split("\\s*,\\s*"));
+    }
+
+    /**
+     * Server context for a PKCS12 keystore holding one key entry. Shared with the handshake
+     * benchmark so it measures exactly what the server runs.
+     */
+    public static TerminalTls create(String keystorePath, char[] password, int cacheSize, int timeoutSeconds,
+                                     String[] protocols) throws IOException, GeneralSecurityException {
+        // Read when the first SSLContext is set up; respect an explicit -D
+        if (System.getProperty(TICKETS_PROPERTY) == null) System.setProperty(TICKETS_PROPERTY, "true");
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keystorePath)) {
+            keyStore.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(Math.max(0, cacheSize));
+        sessions.setSessionTimeout(Math.max(0, timeoutSeconds));
+        return new TerminalTls(context, protocols);
+    }
+
+    /**
+     * A listening socket that hands out TLS connections
+     */
+    public SSLServerSocket newServerSocket(int port) throws IOException {
+        SSLServerSocket socket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(port);
+        socket.setEnabledProtocols(protocols);
+        socket.setNeedClientAuth(false);
+        return socket;
+    }
+
+    /**
+     * Start timing a freshly accepted connection's handshake; it completes on whichever of the
+     * connection's threads first reads or writes
+     */
+    public void track(Socket socket) {
+        if (!(socket instanceof SSLSocket tlsSocket)) return;
+        long acceptedAt = System.nanoTime();
+        long acceptedAtMillis = System.currentTimeMillis();
+        tlsSocket.addHandshakeCompletedListener(event -> {
+            long nanos = System.nanoTime() - acceptedAt;
+            handshakes.increment();
+            handshakeNanos.add(nanos);
+            // A session created before this connection was accepted came out of the cache or a ticket
+            if (event.getSession().getCreationTime() < acceptedAtMillis) {
+                resumed.increment();
+                resumedNanos.add(nanos);
+            }
+        });
+    }
+
+    public SSLContext getContext() {
+        return context;
+    }
+
+    public Map<String, Object> toMap() {
+        long total = handshakes.sum();
+        long resumes = resumed.sum();
+        long full = total - resumes;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("handshakes", total);
+        stats.put("resumed", resumes);
+        stats.put("resumedRatio", total > 0 ? Math.round(resumes * 1000.0 / total) / 1000.0 : 0.0);
+        stats.put("fullAvgMs", full > 0 ? (handshakeNanos.sum() - resumedNanos.sum()) / full / 1_000_000.0 : 0.0);
+        stats.put("resumedAvgMs", resumes > 0 ? resumedNanos.sum() / resumes / 1_000_000.0 : 0.0);
+        stats.put("cachedSessions", cachedSessions());
+        return stats;
+    }
+
+    private int cachedSessions() {
+        int count = 0;
+        var ids = context.getServerSessionContext().getIds();
+        while (ids.hasMoreElements()) {
+            ids.nextElement();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,40 @@
+package me.ghosthacks96.pos.server.utils.protocol;
+
+/**
+ * Length-prefixed binary framing, negotiated with {@code CMD[:_:]PROTOCOL[:_:]BIN1}.
+ *
+ * <pre>
+ * frame   = varint(payloadLength) payload
+ * payload = opcode(1 byte) [varint(correlationId) when opcode &amp; 0x80] field*
+ * field   = varint(byteLength) utf8Bytes
+ * </pre>
+ *
+ * A RAW frame carries the prefix and subcommand as its first two fields. {@link MessageParser}
+ * reads frames and {@link ResponseEncoder} writes them; this class holds what they share.
+ */
+public final class BinaryCodec {
+
+    public static final String PROTOCOL_NAME = "BIN1";
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private BinaryCodec() {
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static int putVarint(byte[] target, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -0,0 +1,162 @@
+package me.ghosthacks96.pos.server.utils.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Optional compression of a terminal's responses, negotiated with
+ * {@code CMD[:_:]LOGIN[:_:]user[:_:]password[:_:]DEFLATE}. Until {@link #enable} is called every
+ * write passes straight through.
+ *
+ * <p>Once enabled, each flushed batch of at least {@code minBytes} becomes one block:
+ *
+ * <pre>
+ * block = 0x00 varint(compressedLength) deflateBytes
+ * </pre>
+ *
+ * The deflate stream is raw (no zlib header) and sync-flushed at the end of every block, so the
+ * terminal inflates each block as soon as it arrives and the dictionary carries over between
+ * blocks. Smaller batches are written as they are; neither a text line nor a binary frame can
+ * start with 0x00. Server pushes bypass this stream, since they may be dropped or coalesced and
+ * a missing block would break the deflate stream.
+ *
+ * <p>Not thread-safe; the owning ClientHandler serializes access.
+ */
+public final class DeflateOutputStream extends OutputStream {
+
+    public static final String MODE_NAME = "DEFLATE";
+    public static final int BLOCK_MARKER = 0x00;
+    private static final int BLOCK_HEADER = 6;
+
+    // Totals across all connections, for the dashboard
+    private static final LongAdder totalRawBytes = new LongAdder();
+    private static final LongAdder totalCompressedBytes = new LongAdder();
+    private static final LongAdder totalBlocks = new LongAdder();
+    private static final LongAdder totalSkipped = new LongAdder();
+    private static final LongAdder totalCpuNanos = new LongAdder();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final OutputStream out;
+    private Deflater deflater;
+    private int minBytes;
+    private byte[] block = new byte[4096];
+
+    private long rawBytes = 0;
+    private long compressedBytes = 0;
+    private long blocks = 0;
+    private long skipped = 0;
+    private long cpuNanos = 0;
+
+    public DeflateOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Compress every later batch of at least {@code minBytes}
+     */
+    public void enable(int level, int minBytes) {
+        if (deflater == null) deflater = new Deflater(level, true);
+        this.minBytes = Math.max(1, minBytes);
+    }
+
+    public boolean isEnabled() {
+        return deflater != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) return;
+        if (deflater == null) {
+            out.write(data, offset, length);
+            return;
+        }
+        if (length < minBytes) {
+            skipped++;
+            totalSkipped.increment();
+            out.write(data, offset, length);
+            return;
+        }
+
+        long startCpu = cpuTime();
+        deflater.setInput(data, offset, length);
+        int size = BLOCK_HEADER;
+        while (true) {
+            size += deflater.deflate(block, size, block.length - size, Deflater.SYNC_FLUSH);
+            // A full output buffer means there may be more to come
+            if (size < block.length) break;
+            block = Arrays.copyOf(block, block.length * 2);
+        }
+        int compressed = size - BLOCK_HEADER;
+        int headerSize = 1 + BinaryCodec.varintSize(compressed);
+        int start = BLOCK_HEADER - headerSize;
+        block[start] = BLOCK_MARKER;
+        BinaryCodec.putVarint(block, start + 1, compressed);
+        long spent = cpuTime() - startCpu;
+
+        rawBytes += length;
+        compressedBytes += size - start;
+        blocks++;
+        cpuNanos += spent;
+        totalRawBytes.add(length);
+        totalCompressedBytes.add(size - start);
+        totalBlocks.increment();
+        totalCpuNanos.add(spent);
+
+        out.write(block, start, size - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * This connection's counters; the ratio is compressed bytes over raw bytes for the batches
+     * that were compressed
+     */
+    public Map<String, Object> toMap() {
+        return stats(deflater != null, rawBytes, compressedBytes, blocks, skipped, cpuNanos);
+    }
+
+    public static Map<String, Object> totals() {
+        return stats(true, totalRawBytes.sum(), totalCompressedBytes.sum(), totalBlocks.sum(),
+                totalSkipped.sum(), totalCpuNanos.sum());
+    }
+
+    private static Map<String, Object> stats(boolean enabled, long raw, long compressed, long blocks, long skipped, long cpuNanos) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rawBytes", raw);
+        stats.put("compressedBytes", compressed);
+        stats.put("ratio", raw > 0 ? Math.round(compressed * 1000.0 / raw) / 1000.0 : 1.0);
+        stats.put("blocks", blocks);
+        stats.put("skipped", skipped);
+        stats.put("cpuMs", cpuNanos / 1_000_000.0);
+        return stats;
+    }
+}
@@ -0,0 +1,422 @@
+package me.ghosthacks96.pos.server.utils.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable per-connection message reader and tokenizer. Lines (or binary frames) are read into a
+ * buffer owned by the parser and {@code [:_:]} fields are recorded as offsets into it, so matching
+ * a prefix or subcommand allocates nothing. Only arguments a handler actually asks for with
+ * {@link #arg(int)} are materialized as strings.
+ *
+ * <p>Field 0 is the prefix (CMD/REC/TRA/DAT); "args" are the fields after it, matching the
+ * {@code args} arrays the handlers were originally written against. A terminal that pipelines
+ * requests tags them with a correlation id, {@code DAT@42} in text or opcode bit 0x80 followed by
+ * a varint in binary; the tag is stripped from field 0 and exposed as {@link #correlationId()}.
+ */
+public final class MessageParser {
+
+    public static final int PREFIX_NONE = -1;
+    public static final int PREFIX_CMD = 0;
+    public static final int PREFIX_REC = 1;
+    public static final int PREFIX_TRA = 2;
+    public static final int PREFIX_DAT = 3;
+    private static final String[] PREFIXES = {"CMD", "REC", "TRA", "DAT"};
+
+    private static final byte[] DELIMITER = "[:_:]".getBytes(StandardCharsets.US_ASCII);
+    public static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+    public static final int NO_CORRELATION = -1;
+    // Set on a binary opcode when a correlation id follows it
+    public static final int CORRELATION_FLAG = 0x80;
+
+    private final InputStream in;
+    private final byte[] readBuffer;
+    private int readPos = 0;
+    private int readLimit = 0;
+
+    private byte[] buffer = new byte[512];
+    private int length = 0;
+    private byte[] frame = new byte[512];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount = 0;
+    private int correlationId = NO_CORRELATION;
+
+    /**
+     * Parser that reads directly from a blocking socket stream
+     */
+    public MessageParser(InputStream in) {
+        this.in = in;
+        this.readBuffer = new byte[8192];
+    }
+
+    /**
+     * Parser that is fed complete messages by a transport (NIO) or a tool
+     */
+    public MessageParser() {
+        this.in = null;
+        this.readBuffer = null;
+    }
+
+    /**
+     * Read the next newline-terminated message. Returns false at end of stream.
+     */
+    public boolean readLine() throws IOException {
+        length = 0;
+        while (true) {
+            if (readPos == readLimit && !fill()) {
+                if (length == 0) return false;
+                break;
+            }
+            // Scan the buffered bytes for the line end and copy the run in one go
+            int start = readPos;
+            while (readPos < readLimit && readBuffer[readPos] != '\n') readPos++;
+            append(readBuffer, start, readPos - start);
+            if (readPos < readLimit) {
+                readPos++;
+                break;
+            }
+        }
+        if (length > 0 && buffer[length - 1] == '\r') length--;
+        tokenize();
+        return true;
+    }
+
+    /**
+     * Read the next length-prefixed binary frame. Returns false at end of stream.
+     */
+    public boolean readFrame() throws IOException {
+        int b = readByte();
+        if (b < 0) return false;
+        int frameLength = b & 0x7F;
+        int shift = 7;
+        while ((b & 0x80) != 0) {
+            if (shift > 28) throw new IOException("Malformed frame length");
+            b = readByte();
+            if (b < 0) throw new EOFException("Truncated frame length");
+            frameLength |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        // A fifth length byte can reach the sign bit
+        if (frameLength < 0 || frameLength > BinaryCodec.MAX_FRAME_BYTES) throw new IOException("Invalid frame length: " + frameLength);
+        if (frame.length < frameLength) frame = new byte[Math.max(frameLength, frame.length * 2)];
+        int read = 0;
+        while (read < frameLength) {
+            if (readPos == readLimit && !fill()) throw new EOFException("Truncated frame");
+            int n = Math.min(readLimit - readPos, frameLength - read);
+            System.arraycopy(readBuffer, readPos, frame, read, n);
+            readPos += n;
+            read += n;
+        }
+        loadFrame(frame, 0, frameLength);
+        return true;
+    }
+
+    /**
+     * Load one text message framed elsewhere (without its line terminator)
+     */
+    public void loadLine(byte[] source, int offset, int count) {
+        length = 0;
+        append(source, offset, count);
+        if (length > 0 && buffer[length - 1] == '\r') length--;
+        tokenize();
+    }
+
+    public void loadLine(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        loadLine(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Load a binary frame payload. Opcode frames get their prefix and subcommand written in as the
+     * first two fields so handlers cannot tell the protocols apart. A ProtocolException means the
+     * payload was bad but the stream is still in sync.
+     */
+    public void loadFrame(byte[] payload, int offset, int count) throws ProtocolException {
+        length = 0;
+        fieldCount = 0;
+        correlationId = NO_CORRELATION;
+        if (count == 0) throw new ProtocolException("Empty frame");
+        int code = payload[offset] & 0xFF;
+        Opcode opcode = Opcode.fromCode(code & ~CORRELATION_FLAG);
+        if (opcode == null) throw new ProtocolException("Unknown opcode: " + code);
+        if (opcode != Opcode.RAW) {
+            addAsciiField(opcode.prefix());
+            addAsciiField(opcode.command());
+        }
+        int pos = offset + 1;
+        int end = offset + count;
+        if ((code & CORRELATION_FLAG) != 0) {
+            int id = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos >= end || shift > 28) throw new ProtocolException("Malformed correlation id");
+                b = payload[pos++];
+                id |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (id < 0) throw new ProtocolException("Malformed correlation id");
+            correlationId = id;
+        }
+        while (pos < end) {
+            int fieldLength = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos >= end || shift > 28) throw new ProtocolException("Malformed field length");
+                b = payload[pos++];
+                fieldLength |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (fieldLength < 0 || pos + fieldLength > end) throw new ProtocolException("Field overruns frame");
+            ensureField();
+            starts[fieldCount] = length;
+            append(payload, pos, fieldLength);
+            ends[fieldCount++] = length;
+            pos += fieldLength;
+        }
+        if (fieldCount < 2) throw new ProtocolException("RAW frame without prefix and command");
+    }
+
+    private void addAsciiField(String value) {
+        ensureField();
+        ensureCapacity(value.length());
+        starts[fieldCount] = length;
+        for (int i = 0; i < value.length(); i++) buffer[length++] = (byte) value.charAt(i);
+        ends[fieldCount++] = length;
+    }
+
+    /**
+     * Split the loaded line on [:_:], trimming the line and each field like the old regex split
+     */
+    private void tokenize() {
+        fieldCount = 0;
+        correlationId = NO_CORRELATION;
+        int start = 0;
+        int end = length;
+        while (start < end && (buffer[start] & 0xFF) <= ' ') start++;
+        while (end > start && (buffer[end - 1] & 0xFF) <= ' ') end--;
+        if (start == end) return;
+
+        int fieldStart = start;
+        int i = start;
+        while (i <= end - DELIMITER.length) {
+            if (isDelimiterAt(i)) {
+                addTrimmedField(fieldStart, i);
+                i += DELIMITER.length;
+                fieldStart = i;
+            } else {
+                i++;
+            }
+        }
+        addTrimmedField(fieldStart, end);
+        // Pattern.split drops trailing empty strings; keep terminals seeing the same arg counts
+        while (fieldCount > 0 && starts[fieldCount - 1] == ends[fieldCount - 1]) fieldCount--;
+        if (fieldCount > 0) parseCorrelationTag();
+    }
+
+    /**
+     * Strip an {@code @<digits>} tag off the prefix field. Anything else after an '@' is left in
+     * place so the prefix check rejects it as before.
+     */
+    private void parseCorrelationTag() {
+        int start = starts[0];
+        int end = ends[0];
+        int at = start;
+        while (at < end && buffer[at] != '@') at++;
+        if (at == end || at + 1 == end || end - at > 10) return;
+        int id = 0;
+        for (int i = at + 1; i < end; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') return;
+            id = id * 10 + (b - '0');
+        }
+        correlationId = id;
+        ends[0] = at;
+    }
+
+    private boolean isDelimiterAt(int pos) {
+        for (int k = 0; k < DELIMITER.length; k++) {
+            if (buffer[pos + k] != DELIMITER[k]) return false;
+        }
+        return true;
+    }
+
+    private void addTrimmedField(int start, int end) {
+        ensureField();
+        while (start < end && (buffer[start] & 0xFF) <= ' ') start++;
+        while (end > start && (buffer[end - 1] & 0xFF) <= ' ') end--;
+        starts[fieldCount] = start;
+        ends[fieldCount++] = end;
+    }
+
+    /**
+     * Correlation id the terminal tagged this request with, or NO_CORRELATION
+     */
+    public int correlationId() {
+        return correlationId;
+    }
+
+    /**
+     * Detached copy of the current message, for handing a request to another thread while this
+     * parser moves on to the next one
+     */
+    public MessageParser copy() {
+        MessageParser copy = new MessageParser();
+        copy.buffer = Arrays.copyOf(buffer, length);
+        copy.length = length;
+        copy.starts = Arrays.copyOf(starts, Math.max(fieldCount, 1));
+        copy.ends = Arrays.copyOf(ends, Math.max(fieldCount, 1));
+        copy.fieldCount = fieldCount;
+        copy.correlationId = correlationId;
+        return copy;
+    }
+
+    /**
+     * True when nothing but whitespace was received
+     */
+    public boolean isEmpty() {
+        return fieldCount == 0;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Number of fields after the prefix
+     */
+    public int argCount() {
+        return Math.max(0, fieldCount - 1);
+    }
+
+    /**
+     * Which protocol prefix field 0 holds, or PREFIX_NONE. Like the original check, the field only
+     * has to start with a known prefix to be accepted.
+     */
+    public int prefix() {
+        if (fieldCount == 0) return PREFIX_NONE;
+        for (int p = 0; p < PREFIXES.length; p++) {
+            if (regionStartsWith(0, PREFIXES[p])) return p;
+        }
+        return PREFIX_NONE;
+    }
+
+    /**
+     * True when field 0 is exactly the given prefix, ignoring case
+     */
+    public boolean prefixIs(int prefix) {
+        return prefix >= 0 && prefix < PREFIXES.length && fieldEquals(0, PREFIXES[prefix]);
+    }
+
+    /**
+     * Case-insensitive comparison of argument i against an ASCII constant, without allocating
+     */
+    public boolean argIs(int i, String value) {
+        return fieldEquals(i + 1, value);
+    }
+
+    /**
+     * Hash of argument i upper-cased, equal to {@code hashUpper} of the same text. Used for
+     * table lookups without materializing the argument.
+     */
+    public int argHashUpper(int i) {
+        int field = i + 1;
+        if (field >= fieldCount) return 0;
+        int h = 0;
+        for (int k = starts[field]; k < ends[field]; k++) h = 31 * h + upper(buffer[k]);
+        return h;
+    }
+
+    /**
+     * Hash of an ASCII constant upper-cased, matching {@link #argHashUpper(int)}
+     */
+    public static int hashUpper(String value) {
+        int h = 0;
+        for (int k = 0; k < value.length(); k++) h = 31 * h + upper((byte) value.charAt(k));
+        return h;
+    }
+
+    /**
+     * Argument i as a string, or "" when the terminal did not send it
+     */
+    public String arg(int i) {
+        int field = i + 1;
+        if (field >= fieldCount) return "";
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The message as the terminal would have written it, for errors and debug logging
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length + 16);
+        for (int f = 0; f < fieldCount; f++) {
+            if (f > 0) sb.append("[:_:]");
+            sb.append(new String(buffer, starts[f], ends[f] - starts[f], StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    private boolean fieldEquals(int field, String value) {
+        if (field >= fieldCount) return false;
+        int len = ends[field] - starts[field];
+        if (len != value.length()) return false;
+        return regionStartsWith(field, value);
+    }
+
+    private boolean regionStartsWith(int field, String value) {
+        int start = starts[field];
+        if (ends[field] - start < value.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (upper(buffer[start + i]) != upper((byte) value.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int upper(byte b) {
+        return b >= 'a' && b <= 'z' ? b - 32 : b;
+    }
+
+    private int readByte() throws IOException {
+        if (readPos == readLimit && !fill()) return -1;
+        return readBuffer[readPos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null) return false;
+        int n = in.read(readBuffer, 0, readBuffer.length);
+        if (n <= 0) return false;
+        readPos = 0;
+        readLimit = n;
+        return true;
+    }
+
+    private void append(byte[] source, int offset, int count) {
+        if (length + count > MAX_MESSAGE_BYTES) {
+            throw new IllegalStateException("Message exceeds " + MAX_MESSAGE_BYTES + " bytes");
+        }
+        ensureCapacity(count);
+        System.arraycopy(source, offset, buffer, length, count);
+        length += count;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void ensureField() {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+    }
+}
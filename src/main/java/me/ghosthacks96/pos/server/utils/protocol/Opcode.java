@@ -0,0 +1,77 @@
+package me.ghosthacks96.pos.server.utils.protocol;
+
+/**
+ * Numeric opcodes for the binary terminal protocol. Each opcode stands for a prefix and
+ * subcommand pair so frames do not carry the command text. Anything without an opcode is sent
+ * as {@link #RAW}, whose first two fields are the prefix and subcommand spelled out.
+ */
+public enum Opcode {
+    RAW(0x00, null, null),
+
+    // CMD
+    CMD_TEST(0x01, "CMD", "TEST"),
+    CMD_LOGIN(0x02, "CMD", "LOGIN"),
+    CMD_LOGOUT(0x03, "CMD", "LOGOUT"),
+    CMD_DISCONNECT(0x04, "CMD", "DISCONNECT"),
+    CMD_LOGINREQUEST(0x05, "CMD", "LOGINREQUEST"),
+    CMD_SHUTDOWN(0x06, "CMD", "SHUTDOWN"),
+    CMD_PROTOCOL(0x07, "CMD", "PROTOCOL"),
+    CMD_ALREADY_CONNECTED(0x08, "CMD", "ALREADY_CONNECTED"),
+    CMD_RESUME(0x09, "CMD", "RESUME"),
+    CMD_TOKEN(0x0A, "CMD", "TOKEN"),
+
+    // DAT
+    DAT_PROD_LIST(0x20, "DAT", "PROD_LIST"),
+    DAT_U_PERMS(0x21, "DAT", "U_PERMS"),
+    DAT_U_DATA(0x22, "DAT", "U_DATA"),
+    DAT_TRANSACTION(0x23, "DAT", "TRANSACTION"),
+    DAT_PROD_PUSH(0x24, "DAT", "PROD_PUSH"),
+    DAT_PROD_CHUNK(0x25, "DAT", "PROD_CHUNK"),
+    DAT_PROD_END(0x26, "DAT", "PROD_END"),
+    DAT_PROD_DELTA(0x27, "DAT", "PROD_DELTA"),
+
+    // TRA
+    TRA_SUBMIT(0x40, "TRA", "SUBMIT"),
+    TRA_BATCH(0x41, "TRA", "BATCH"),
+
+    // REC
+    REC_RECEIPT(0x60, "REC", "RECEIPT"),
+    REC_REPRINT(0x61, "REC", "REPRINT");
+
+    private static final Opcode[] BY_CODE = new Opcode[256];
+
+    static {
+        for (Opcode opcode : values()) {
+            BY_CODE[opcode.code] = opcode;
+        }
+    }
+
+    private final int code;
+    private final String prefix;
+    private final String command;
+
+    Opcode(int code, String prefix, String command) {
+        this.code = code;
+        this.prefix = prefix;
+        this.command = command;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public String command() {
+        return command;
+    }
+
+    /**
+     * Opcode for a wire byte, or null if the byte is not assigned
+     */
+    public static Opcode fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
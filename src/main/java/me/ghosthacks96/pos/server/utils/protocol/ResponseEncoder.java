@@ -0,0 +1,331 @@
+package me.ghosthacks96.pos.server.utils.protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Per-connection output buffer that encodes responses in place. A response is written as
+ * {@code begin(type, command).part(..).end()} straight into the buffer, in either the text or
+ * the binary protocol, and {@link #flush()} hands the buffered bytes to the socket stream. Strings
+ * are UTF-8 encoded by hand so the request hot path produces no garbage.
+ *
+ * <p>Not thread-safe; the owning ClientHandler serializes access.
+ */
+public final class ResponseEncoder {
+
+    private static final byte[] DELIMITER = "[:_:]".getBytes(StandardCharsets.US_ASCII);
+    // Room reserved in front of a binary payload for its varint length
+    private static final int FRAME_HEADER = 5;
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[2048];
+    private int length = 0;
+    private int messageStart = 0;
+    private boolean binary = false;
+    private int messages = 0;
+
+    public ResponseEncoder(OutputStream out) {
+        this.out = out;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Start a response; in binary mode the type/command pair becomes an opcode when one exists
+     */
+    public ResponseEncoder begin(String type, String command) {
+        return begin(type, command, MessageParser.NO_CORRELATION);
+    }
+
+    /**
+     * Start a response tagged with the correlation id of the request it answers
+     */
+    public ResponseEncoder begin(String type, String command, int correlationId) {
+        messageStart = length;
+        if (binary) {
+            ensure(FRAME_HEADER + 6);
+            length += FRAME_HEADER;
+            Opcode opcode = opcodeFor(type, command);
+            if (correlationId >= 0) {
+                buffer[length++] = (byte) (opcode.code() | MessageParser.CORRELATION_FLAG);
+                length = BinaryCodec.putVarint(buffer, length, correlationId);
+            } else {
+                buffer[length++] = (byte) opcode.code();
+            }
+            if (opcode == Opcode.RAW) {
+                part(type);
+                part(command);
+            }
+        } else {
+            writeString(type);
+            if (correlationId >= 0) {
+                ensure(1);
+                buffer[length++] = '@';
+                writeLong(correlationId);
+            }
+            writeDelimiter();
+            writeString(command);
+        }
+        return this;
+    }
+
+    public ResponseEncoder part(String value) {
+        if (value == null) value = "";
+        if (binary) {
+            int size = utf8Length(value);
+            ensure(5 + size);
+            length = BinaryCodec.putVarint(buffer, length, size);
+            writeString(value);
+        } else {
+            writeDelimiter();
+            writeString(value);
+        }
+        return this;
+    }
+
+    public ResponseEncoder part(long value) {
+        if (binary) {
+            int size = decimalLength(value);
+            ensure(5 + size);
+            length = BinaryCodec.putVarint(buffer, length, size);
+        } else {
+            writeDelimiter();
+        }
+        writeLong(value);
+        return this;
+    }
+
+    public ResponseEncoder part(Object value) {
+        return part(value != null ? value.toString() : "");
+    }
+
+    /**
+     * Append to the current text part without a delimiter, for the '|' and ';' joined payloads of
+     * the text protocol. Not used in binary mode, where every value is its own field.
+     */
+    public ResponseEncoder raw(String value) {
+        writeString(value != null ? value : "null");
+        return this;
+    }
+
+    public ResponseEncoder raw(char value) {
+        if (value < 0x80) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+            return this;
+        }
+        return raw(String.valueOf(value));
+    }
+
+    public ResponseEncoder raw(Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            writeLong(((Number) value).longValue());
+            return this;
+        }
+        return raw(String.valueOf(value));
+    }
+
+    /**
+     * Finish the current response: a newline for text, the length prefix for binary
+     */
+    public void end() {
+        if (binary) {
+            int payload = length - messageStart - FRAME_HEADER;
+            int headerSize = BinaryCodec.varintSize(payload);
+            int payloadStart = messageStart + FRAME_HEADER;
+            int frameStart = payloadStart - headerSize;
+            BinaryCodec.putVarint(buffer, frameStart, payload);
+            if (frameStart != messageStart) {
+                // Close the unused part of the reserved header
+                System.arraycopy(buffer, frameStart, buffer, messageStart, headerSize + payload);
+                length -= frameStart - messageStart;
+            }
+        } else {
+            ensure(1);
+            buffer[length++] = '\n';
+        }
+        messages++;
+    }
+
+    /**
+     * Write a pre-built text line. In binary mode it is split into a frame first.
+     */
+    public void line(String message) {
+        if (binary) {
+            String[] parts = message.split("\\[:_:]", -1);
+            begin(parts[0], parts.length > 1 ? parts[1] : "");
+            for (int i = 2; i < parts.length; i++) part(parts[i]);
+        } else {
+            messageStart = length;
+            writeString(message);
+        }
+        end();
+    }
+
+    /**
+     * Drop a response that was started but should not be sent
+     */
+    public void discard() {
+        length = messageStart;
+    }
+
+    /**
+     * The last response as text, for debug logging only
+     */
+    public String lastMessage() {
+        int start = messageStart;
+        if (binary) return "<" + (length - start) + " byte frame>";
+        int end = length > start && buffer[length - 1] == '\n' ? length - 1 : length;
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    public int pendingBytes() {
+        return length;
+    }
+
+    /**
+     * Responses encoded since the last flush
+     */
+    public int pendingMessages() {
+        return messages;
+    }
+
+    /**
+     * Write every buffered response in one call. The batch is dropped if the write fails, since
+     * the connection is gone at that point.
+     */
+    public void flush() throws IOException {
+        if (length > 0) {
+            try {
+                out.write(buffer, 0, length);
+            } finally {
+                length = 0;
+                messageStart = 0;
+                messages = 0;
+            }
+        }
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Opcode opcodeFor(String type, String command) {
+        for (Opcode opcode : OPCODES) {
+            if (opcode.prefix() != null && opcode.prefix().equalsIgnoreCase(type)
+                    && opcode.command().equalsIgnoreCase(command)) {
+                return opcode;
+            }
+        }
+        return Opcode.RAW;
+    }
+
+    private void writeDelimiter() {
+        ensure(DELIMITER.length);
+        System.arraycopy(DELIMITER, 0, buffer, length, DELIMITER.length);
+        length += DELIMITER.length;
+    }
+
+    private void writeString(String value) {
+        int n = value.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else {
+                ensure(n - i + 3);
+                if (c < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | (c >> 6));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    buffer[length++] = '?';
+                } else {
+                    buffer[length++] = (byte) (0xE0 | (c >> 12));
+                    buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes {@code value} takes once encoded, as written by {@link #part(String)}
+     */
+    public static int utf8Length(String value) {
+        int n = value.length();
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                size++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    private void writeLong(long value) {
+        int size = decimalLength(value);
+        ensure(size);
+        int pos = length + size;
+        long v = value;
+        if (v == Long.MIN_VALUE) {
+            writeString(Long.toString(v));
+            return;
+        }
+        boolean negative = v < 0;
+        if (negative) v = -v;
+        do {
+            buffer[--pos] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (negative) buffer[--pos] = '-';
+        length += size;
+    }
+
+    private static int decimalLength(long value) {
+        if (value == Long.MIN_VALUE) return 20;
+        int size = value < 0 ? 2 : 1;
+        long v = Math.abs(value);
+        while (v >= 10) {
+            v /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package me.ghosthacks96.pos.server.utils.receipts;
+
+import me.ghosthacks96.pos.server.POSServer;
+import me.ghosthacks96.pos.server.utils.Config;
+import me.ghosthacks96.pos.server.utils.console.ConsoleHandler;
+import me.ghosthacks96.pos.server.utils.models.TransactionItem;
+import me.ghosthacks96.pos.server.utils.models.TransactionModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receipts for REC requests. Each store's layout is compiled once and kept until the store
+ * settings or the layout file change; the last {@code receipt-cache-size} rendered receipts are
+ * kept as lines, so a reprint is a map lookup. Sales are never edited once stored, so a cached
+ * receipt only goes stale when the layout does, and then the cache is cleared.
+ *
+ * <p>The layout is {@code receipt-template} when set (a file path) or the bundled
+ * {@code /receipts/default.txt}, laid out for 42 columns.
+ */
+public final class ReceiptRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptRenderer.class);
+    private static final String BUNDLED_LAYOUT = "/receipts/default.txt";
+    private static final String REPRINT_BANNER = "*** REPRINT ***";
+    // How often a layout file is checked for edits
+    private static final long FILE_CHECK_MS = 5000;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    /** A compiled layout and what it was compiled from */
+    private record Layout(String settings, long fileModified, ReceiptTemplate template, int width) {
+    }
+
+    /** Receipt lines and the layout they were rendered with */
+    private record Rendered(ReceiptTemplate template, String[] lines) {
+    }
+
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+    private final Map<String, Long> fileCheckedAt = new ConcurrentHashMap<>();
+    // Access ordered: the least recently printed receipt is evicted first
+    private final Map<String, Rendered> rendered = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rendered> eldest) {
+            return size() > Config.getInt("receipt-cache-size", 500);
+        }
+    };
+    // Each rendering thread builds lines in its own buffer
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder notFound = new LongAdder();
+    private final LongAdder compiles = new LongAdder();
+
+    /**
+     * The receipt for a stored sale as lines, with a REPRINT banner on top if asked for, or null
+     * if there is no such sale (or it was stored without items)
+     */
+    public String[] receipt(String transactionId, boolean reprint) {
+        requests.increment();
+        String storeId = Config.getString("store-id", "main");
+        Layout layout = layout(storeId);
+        String key = storeId + '/' + transactionId;
+        Rendered cached;
+        synchronized (rendered) {
+            cached = rendered.get(key);
+        }
+        String[] lines;
+        // A receipt rendered with a layout replaced meanwhile is rendered again
+        if (cached != null && cached.template() == layout.template()) {
+            cacheHits.increment();
+            lines = cached.lines();
+        } else {
+            TransactionModel sale = POSServer.databaseHandler.getTransactionWithItems(transactionId);
+            if (sale == null) {
+                notFound.increment();
+                return null;
+            }
+            long start = System.nanoTime();
+            lines = render(layout.template(), sale);
+            renderNanos.add(System.nanoTime() - start);
+            renders.increment();
+            synchronized (rendered) {
+                rendered.put(key, new Rendered(layout.template(), lines));
+            }
+        }
+        if (!reprint) return lines;
+        String[] copy = new String[lines.length + 1];
+        int pad = Math.max(0, (layout.width() - REPRINT_BANNER.length()) / 2);
+        copy[0] = " ".repeat(pad) + REPRINT_BANNER;
+        System.arraycopy(lines, 0, copy, 1, lines.length);
+        return copy;
+    }
+
+    private String[] render(ReceiptTemplate template, TransactionModel sale) {
+        String[] values = new String[ReceiptTemplate.SALE_FIELDS.size()];
+        values[0] = sale.transactionId();
+        values[1] = sale.timestamp().atOffset(ZoneOffset.UTC).atZoneSameInstant(ZoneId.systemDefault()).format(DATE);
+        values[2] = sale.employeeId();
+        values[3] = sale.customerId();
+        values[4] = paymentName(sale.paymentMethod().name());
+        values[5] = money(sale.subtotal());
+        values[6] = money(sale.taxAmount());
+        values[7] = deduction(sale.discountAmount());
+        values[8] = money(sale.totalAmount());
+        values[9] = String.valueOf(sale.getTotalQuantity());
+
+        List<String[]> items = new ArrayList<>(sale.items().size());
+        for (TransactionItem item : sale.items()) {
+            items.add(new String[]{
+                    item.productId(),
+                    item.productName() != null ? item.productName() : item.productId(),
+                    String.valueOf(item.quantity()),
+                    money(item.unitPrice()),
+                    deduction(item.discountAmount()),
+                    money(item.lineTotal())
+            });
+        }
+        return template.render(values, items, buffers.get());
+    }
+
+    /**
+     * The store's compiled layout, compiling it on first use and again after a change
+     */
+    private Layout layout(String storeId) {
+        int width = Math.max(16, Config.getInt("receipt-width", 42));
+        String path = Config.getString("receipt-template", "");
+        String settings = String.join("\n", Config.getString("store-name", "POS Store"),
+                Config.getString("store-address", ""), Config.getString("receipt-footer", ""),
+                String.valueOf(width), path);
+        Layout layout = layouts.get(storeId);
+        long modified = layout != null ? layout.fileModified() : 0;
+        if (!path.isEmpty()) {
+            long now = System.currentTimeMillis();
+            Long checked = fileCheckedAt.get(storeId);
+            if (layout == null || checked == null || now - checked >= FILE_CHECK_MS) {
+                fileCheckedAt.put(storeId, now);
+                modified = new File(path).lastModified();
+            }
+        }
+        if (layout != null && layout.settings().equals(settings) && layout.fileModified() == modified) {
+            return layout;
+        }
+        synchronized (this) {
+            layout = layouts.get(storeId);
+            if (layout != null && layout.settings().equals(settings) && layout.fileModified() == modified) {
+                return layout;
+            }
+            layout = new Layout(settings, modified, compile(path, width), width);
+            layouts.put(storeId, layout);
+            compiles.increment();
+            synchronized (rendered) {
+                rendered.clear();
+            }
+            if (POSServer.config != null && ConsoleHandler.DEBUG) logger.debug("Compiled receipt layout for store {}", storeId);
+            return layout;
+        }
+    }
+
+    private ReceiptTemplate compile(String path, int width) {
+        Map<String, String> store = Map.of(
+                "storeName", Config.getString("store-name", "POS Store"),
+                "storeAddress", Config.getString("store-address", ""),
+                "footer", Config.getString("receipt-footer", ""),
+                "rule", "-".repeat(width));
+        if (!path.isEmpty()) {
+            try {
+                return ReceiptTemplate.compile(Files.readString(new File(path).toPath(), StandardCharsets.UTF_8), store, width);
+            } catch (IOException | IllegalArgumentException e) {
+                // Keep printing with the bundled layout rather than not at all
+                ConsoleHandler.printError("Receipt template " + path + " not usable, using the default layout: " + e.getMessage());
+                logger.error("Receipt template {} not usable: {}", path, e.getMessage());
+            }
+        }
+        try (InputStream in = ReceiptRenderer.class.getResourceAsStream(BUNDLED_LAYOUT)) {
+            if (in == null) throw new IllegalStateException("Missing resource " + BUNDLED_LAYOUT);
+            return ReceiptTemplate.compile(new String(in.readAllBytes(), StandardCharsets.UTF_8), store, width);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + BUNDLED_LAYOUT, e);
+        }
+    }
+
+    private static String money(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    /**
+     * A discount as printed, "-1.50", or empty when there is none so the line can be left out
+     */
+    private static String deduction(BigDecimal amount) {
+        return amount == null || amount.signum() == 0 ? "" : "-" + money(amount);
+    }
+
+    /**
+     * CREDIT_CARD as "Credit card"
+     */
+    private static String paymentName(String method) {
+        String words = method.replace('_', ' ').toLowerCase();
+        return Character.toUpperCase(words.charAt(0)) + words.substring(1);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long renderCount = renders.sum();
+        stats.put("requests", requests.sum());
+        stats.put("cacheHits", cacheHits.sum());
+        stats.put("renders", renderCount);
+        stats.put("avgRenderUs", renderCount == 0 ? 0 : Math.round(renderNanos.sum() / 100.0 / renderCount) / 10.0);
+        stats.put("notFound", notFound.sum());
+        stats.put("layoutCompiles", compiles.sum());
+        synchronized (rendered) {
+            stats.put("cached", rendered.size());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,229 @@
+package me.ghosthacks96.pos.server.utils.receipts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A receipt layout compiled once per store. The source is plain text, one receipt line per line:
+ *
+ * <ul>
+ *     <li>{@code {{field}}} prints a field, {@code {{field:10}}} right-aligns it in 10 columns and
+ *     {@code {{field:-10}}} left-aligns it; longer values are cut to the width</li>
+ *     <li>a line starting with {@code {{?field}}} is left out when the field is empty</li>
+ *     <li>a line starting with {@code ^} is centered in the receipt width</li>
+ *     <li>lines between {@code {{#items}}} and {@code {{/items}}} repeat for every item</li>
+ * </ul>
+ *
+ * Store fields ({@link #STORE_FIELDS}) are constant for a layout and are folded into the text when
+ * it is compiled, so a line made only of text and store fields is finished before any receipt is
+ * rendered. Sale and item fields are resolved to array indexes, and rendering is a walk over the
+ * compiled segments into the caller's buffer.
+ */
+public final class ReceiptTemplate {
+
+    public static final List<String> STORE_FIELDS = List.of("storeName", "storeAddress", "footer", "rule");
+    public static final List<String> SALE_FIELDS = List.of("transactionId", "date", "employeeId", "customerId",
+            "paymentMethod", "subtotal", "tax", "discount", "total", "itemCount");
+    public static final List<String> ITEM_FIELDS = List.of("productId", "productName", "quantity", "unitPrice",
+            "discount", "lineTotal");
+
+    private static final String ITEMS_START = "{{#items}}";
+    private static final String ITEMS_END = "{{/items}}";
+    // Padding source, wider than any receipt printer
+    private static final char[] SPACES = " ".repeat(128).toCharArray();
+
+    /** Literal text when field is -1, otherwise a sale or item field, padded when width is set */
+    private record Segment(String text, int field, int width, boolean alignLeft) {
+    }
+
+    /** A compiled line; fixed is its finished text when it has no sale or item fields */
+    private record Line(boolean item, int condition, boolean center, Segment[] segments, String fixed) {
+    }
+
+    private final int width;
+    private final Line[] lines;
+
+    private ReceiptTemplate(int width, Line[] lines) {
+        this.width = width;
+        this.lines = lines;
+    }
+
+    /**
+     * Compile a layout for one store. Throws IllegalArgumentException naming the line of an
+     * unknown field or an unclosed item block.
+     */
+    public static ReceiptTemplate compile(String source, Map<String, String> store, int width) {
+        List<Line> lines = new ArrayList<>();
+        boolean inItems = false;
+        String[] sourceLines = source.split("\r?\n", -1);
+        int count = sourceLines.length;
+        // A trailing newline does not add an empty receipt line
+        if (count > 0 && sourceLines[count - 1].isEmpty()) count--;
+        for (int n = 0; n < count; n++) {
+            String line = sourceLines[n];
+            if (line.strip().equals(ITEMS_START)) {
+                inItems = true;
+                continue;
+            }
+            if (line.strip().equals(ITEMS_END)) {
+                inItems = false;
+                continue;
+            }
+            try {
+                Line compiled = compileLine(line, inItems, store, width);
+                if (compiled != null) lines.add(compiled);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Receipt layout line " + (n + 1) + ": " + e.getMessage());
+            }
+        }
+        if (inItems) throw new IllegalArgumentException("Receipt layout: " + ITEMS_START + " is never closed");
+        return new ReceiptTemplate(width, lines.toArray(new Line[0]));
+    }
+
+    private static Line compileLine(String line, boolean item, Map<String, String> store, int width) {
+        List<String> fields = item ? ITEM_FIELDS : SALE_FIELDS;
+        int condition = -1;
+        if (line.startsWith("{{?")) {
+            int close = line.indexOf("}}");
+            if (close < 0) throw new IllegalArgumentException("unclosed condition");
+            String name = line.substring(3, close);
+            if (STORE_FIELDS.contains(name)) {
+                // Decided now: the line is either always there or never
+                if (store.getOrDefault(name, "").isBlank()) return null;
+            } else {
+                condition = index(fields, name);
+            }
+            line = line.substring(close + 2);
+        }
+        boolean center = line.startsWith("^");
+        if (center) line = line.substring(1);
+
+        List<Segment> segments = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int pos = 0;
+        while (pos < line.length()) {
+            int open = line.indexOf("{{", pos);
+            if (open < 0) {
+                text.append(line, pos, line.length());
+                break;
+            }
+            int close = line.indexOf("}}", open);
+            if (close < 0) throw new IllegalArgumentException("unclosed field");
+            text.append(line, pos, open);
+            String spec = line.substring(open + 2, close);
+            pos = close + 2;
+
+            String name = spec;
+            int fieldWidth = 0;
+            boolean alignLeft = false;
+            int colon = spec.indexOf(':');
+            if (colon >= 0) {
+                name = spec.substring(0, colon);
+                try {
+                    fieldWidth = Integer.parseInt(spec.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("bad width in {{" + spec + "}}");
+                }
+                alignLeft = fieldWidth < 0;
+                fieldWidth = Math.abs(fieldWidth);
+            }
+            if (STORE_FIELDS.contains(name)) {
+                appendPadded(text, store.getOrDefault(name, ""), fieldWidth, alignLeft);
+                continue;
+            }
+            if (!text.isEmpty()) {
+                segments.add(new Segment(text.toString(), -1, 0, false));
+                text.setLength(0);
+            }
+            segments.add(new Segment(null, index(fields, name), fieldWidth, alignLeft));
+        }
+        if (segments.isEmpty()) {
+            // Only text and store fields: finish the line now
+            StringBuilder fixed = new StringBuilder();
+            appendLine(fixed, text, center, width);
+            return new Line(item, condition, false, new Segment[0], fixed.toString());
+        }
+        if (!text.isEmpty()) segments.add(new Segment(text.toString(), -1, 0, false));
+        return new Line(item, condition, center, segments.toArray(new Segment[0]), null);
+    }
+
+    private static int index(List<String> fields, String name) {
+        int index = fields.indexOf(name);
+        if (index < 0) throw new IllegalArgumentException("unknown field {{" + name + "}}");
+        return index;
+    }
+
+    /**
+     * Render a sale into receipt lines. {@code sale} holds values in {@link #SALE_FIELDS} order and
+     * each element of {@code items} values in {@link #ITEM_FIELDS} order; {@code buffer} is reused
+     * between calls.
+     */
+    public String[] render(String[] sale, List<String[]> items, StringBuilder buffer) {
+        List<String> out = new ArrayList<>(lines.length + items.size() * 2);
+        int i = 0;
+        while (i < lines.length) {
+            if (!lines[i].item()) {
+                renderLine(lines[i], sale, buffer, out);
+                i++;
+                continue;
+            }
+            // An item block: every item through all of its lines
+            int end = i;
+            while (end < lines.length && lines[end].item()) end++;
+            for (String[] item : items) {
+                for (int j = i; j < end; j++) renderLine(lines[j], item, buffer, out);
+            }
+            i = end;
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private void renderLine(Line line, String[] values, StringBuilder buffer, List<String> out) {
+        if (line.condition() >= 0 && isEmpty(values[line.condition()])) return;
+        if (line.fixed() != null) {
+            out.add(line.fixed());
+            return;
+        }
+        buffer.setLength(0);
+        for (Segment segment : line.segments()) {
+            if (segment.field() < 0) {
+                buffer.append(segment.text());
+            } else {
+                appendPadded(buffer, values[segment.field()], segment.width(), segment.alignLeft());
+            }
+        }
+        if (line.center() && buffer.length() < width) {
+            buffer.insert(0, SPACES, 0, Math.min(SPACES.length, (width - buffer.length()) / 2));
+        }
+        out.add(buffer.toString());
+    }
+
+    private static void appendLine(StringBuilder out, CharSequence text, boolean center, int width) {
+        if (center && text.length() < width) appendSpaces(out, (width - text.length()) / 2);
+        out.append(text);
+    }
+
+    private static void appendSpaces(StringBuilder out, int count) {
+        out.append(SPACES, 0, Math.min(SPACES.length, count));
+    }
+
+    private static void appendPadded(StringBuilder out, String value, int width, boolean alignLeft) {
+        if (value == null) value = "";
+        if (width == 0) {
+            out.append(value);
+            return;
+        }
+        if (value.length() >= width) {
+            out.append(value, 0, width);
+            return;
+        }
+        if (!alignLeft) appendSpaces(out, width - value.length());
+        out.append(value);
+        if (alignLeft) appendSpaces(out, width - value.length());
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isBlank();
+    }
+}